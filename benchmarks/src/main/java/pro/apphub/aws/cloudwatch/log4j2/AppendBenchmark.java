@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link CloudWatchAppender#append} at 1 to 64 threads with the {@code local} transport, whose
+ * latency and per-stream request rate are parameters, for the double buffer and the Disruptor queue.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AppendBenchmark {
+    @Param({"10000", "100000"})
+    public int capacity;
+
+    @Param({"0"})
+    public long latency;
+
+    @Param({"0"})
+    public double rate;
+
+    @Param({"buffer", "disruptor"})
+    public String queue;
+
+    @Param({"Timeout"})
+    public String waitStrategy;
+
+    private LogEvent event;
+    private CloudWatchAppender appender;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        System.setProperty("aws.cloudwatch.local.latency", Long.toString(latency));
+        System.setProperty("aws.cloudwatch.local.rate", Double.toString(rate));
+        System.setProperty("aws.cloudwatch.local.retention", "0");
+        event = Log4jLogEvent.newBuilder()
+                             .setLoggerName("benchmark")
+                             .setLevel(org.apache.logging.log4j.Level.INFO)
+                             .setThreadName("main")
+                             .setTimeMillis(System.currentTimeMillis())
+                             .setMessage(new SimpleMessage("Request processed in 42 ms for user 1234567"))
+                             .build();
+        appender = CloudWatchAppender.newBuilder()
+                                     .setName("benchmark")
+                                     .setGroup("benchmark")
+                                     .setTransport("local")
+                                     .setCapacity(capacity)
+                                     .setSpan(1)
+                                     .setRetryBudget(1000L)
+                                     .setRequestRate(rate)
+                                     .setQueue(queue)
+                                     .setWaitStrategy(waitStrategy)
+                                     .setLayout(PatternLayout.newBuilder()
+                                                             .withPattern("%-5level [%t] %logger{1} - %msg%n")
+                                                             .withCharset(StandardCharsets.UTF_8)
+                                                             .build())
+                                     .build();
+        appender.start();
+        while (appender.getStream() == null) {
+            Thread.yield();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        appender.stop();
+        System.out.println(String.format("%n%s", appender.getMetrics()));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void append1() {
+        appender.append(event);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void append4() {
+        appender.append(event);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void append16() {
+        appender.append(event);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void append64() {
+        appender.append(event);
+    }
+}
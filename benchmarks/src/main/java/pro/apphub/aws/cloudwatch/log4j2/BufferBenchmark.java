@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.model.CreateLogGroupRequest;
+import com.amazonaws.services.logs.model.CreateLogStreamRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Scaling of {@link Buffer#append} from 1 to 64 threads while a flush thread drains the buffer every millisecond.
+ * One stripe is the single shared counter of the unstriped design; running the same benchmark against an earlier
+ * build compares the padded counters with the previous layout.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BufferBenchmark {
+    @Param({"100000"})
+    public int capacity;
+
+    @Param({"1", "8", "64"})
+    public int stripes;
+
+    private Event event;
+    private Buffer buffer;
+    private FlushWait flushWait;
+    private Sender sender;
+    private AtomicBoolean enabled;
+    private Thread flusher;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        event = new Event(System.currentTimeMillis(), "Request processed in 42 ms for user 1234567");
+        buffer = new Buffer(capacity, stripes);
+        flushWait = new FlushWait(60);
+        final Metrics metrics = new Metrics();
+        LocalAWSLogs logs = new LocalAWSLogs(0L, 0.0, 0);
+        logs.createLogGroup(new CreateLogGroupRequest("group"));
+        logs.createLogStream(new CreateLogStreamRequest("group", "stream"));
+        sender = new Sender("benchmark", logs, "group", "stream", null, 4, metrics, null, new Retry(1000L), null);
+        sender.start();
+        enabled = new AtomicBoolean(true);
+        flusher = new Thread("benchmark-flush") {
+            @Override
+            public void run() {
+                FlushInfo info = new FlushInfo(0L);
+                while (enabled.get()) {
+                    try {
+                        Thread.sleep(1L);
+                    } catch (InterruptedException e) {
+                    }
+                    info = buffer.flush(sender, info, metrics);
+                }
+            }
+        };
+        flusher.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        enabled.set(false);
+        flusher.join();
+        sender.stop();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean append1() {
+        return buffer.append(event, flushWait);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public boolean append2() {
+        return buffer.append(event, flushWait);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean append4() {
+        return buffer.append(event, flushWait);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean append8() {
+        return buffer.append(event, flushWait);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean append16() {
+        return buffer.append(event, flushWait);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public boolean append32() {
+        return buffer.append(event, flushWait);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean append64() {
+        return buffer.append(event, flushWait);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of gzip-encoding a PutLogEvents body of {@code events} typical log lines at the given Deflater
+ * {@code level}. The compressed size and ratio are printed at setup, so the cost per batch can be weighed against
+ * the bytes saved.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+    private static final String[] LINES = {
+            "INFO  pro.apphub.service.Handler - Request %s processed in %d ms",
+            "DEBUG pro.apphub.service.Cache - Cache hit for key user:%s, size %d",
+            "WARN  pro.apphub.service.Client - Retrying call to billing-%s after %d ms",
+            "{\"l\":\"INFO\",\"n\":\"pro.apphub.service.Handler\",\"th\":\"http-nio-8080-exec-%2$d\","
+            + "\"m\":\"GET /api/v1/orders/%1$s 200\",\"c\":{\"requestId\":\"%1$s\"}}"
+    };
+
+    @Param({"100", "1000", "5000"})
+    public int events;
+
+    @Param({"1", "6"})
+    public int level;
+
+    private byte[] payload;
+    private Compression.Compressor compressor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42L);
+        StringBuilder sb = new StringBuilder("{\"logGroupName\":\"group\",\"logStreamName\":\"stream\","
+                                                     + "\"logEvents\":[");
+        for (int i = 0; i < events; ++i) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            String m = String.format(LINES[random.nextInt(LINES.length)], new UUID(random.nextLong(),
+                                                                                   random.nextLong()),
+                                     random.nextInt(1000));
+            sb.append("{\"timestamp\":").append(1500000000000L + i * 3L).append(",\"message\":\"")
+              .append(m.replace("\\", "\\\\").replace("\"", "\\\"")).append("\"}");
+        }
+        payload = sb.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+        compressor = new Compression.Compressor(level);
+        int n = compressor.compress(payload, payload.length);
+        System.out.println(String.format("%n%d events: %d bytes, gzip level %d: %d bytes (%.1f%%)", events,
+                                         payload.length, level, n, n * 100.0 / payload.length));
+    }
+
+    @Benchmark
+    public int compress() {
+        return compressor.compress(payload, payload.length);
+    }
+}
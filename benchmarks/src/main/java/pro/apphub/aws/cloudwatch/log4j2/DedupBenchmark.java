@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link Dedup#accept} when the template repeats within the window ({@code hit}, {@code hit4}) and when
+ * every event has a new template that evicts the one in its slot ({@code miss}). The memory taken by the table is
+ * printed at setup.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DedupBenchmark {
+    @Param({"1024", "65536"})
+    public int size;
+
+    private Dedup dedup;
+    private LogEvent repeated;
+    private LogEvent[] distinct;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        long before = allocated();
+        dedup = new Dedup("benchmark", Long.MAX_VALUE / 2L, size, new Metrics()) {
+            @Override
+            protected void emit(LogEvent summary) {
+            }
+        };
+        long after = allocated();
+        System.out.println(String.format("%ntable of %d slots: %d bytes", dedup.size(), after - before));
+        repeated = event("Connection to {} refused");
+        distinct = new LogEvent[size * 4];
+        for (int i = 0; i < distinct.length; ++i) {
+            distinct[i] = event(String.format("Connection %d to {} refused", i));
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean hit() {
+        return dedup.accept(repeated);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean hit4() {
+        return dedup.accept(repeated);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean miss() {
+        LogEvent e = distinct[index];
+        index = (index + 1 < distinct.length) ? index + 1 : 0;
+        return dedup.accept(e);
+    }
+
+    private static LogEvent event(String format) {
+        return Log4jLogEvent.newBuilder()
+                            .setLoggerName("pro.apphub.service.Client")
+                            .setLevel(org.apache.logging.log4j.Level.ERROR)
+                            .setTimeMillis(System.currentTimeMillis())
+                            .setMessage(new ParameterizedMessage(format, "db"))
+                            .build();
+    }
+
+    private static long allocated() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.model.InputLogEvent;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a log event into the message of a batch: {@link EventEncoder} against the previous
+ * {@code toByteArray} / {@code new String} / {@code substring} path. Run with {@code -prof gc} for the bytes
+ * allocated per event.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EncodeBenchmark {
+    @Param({"40", "400", "8000"})
+    public int size;
+
+    private PatternLayout layout;
+    private LogEvent event;
+    private EventEncoder encoder;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        layout = PatternLayout.newBuilder()
+                              .withPattern("%-5level [%t] %logger{1} - %msg%n")
+                              .withCharset(StandardCharsets.UTF_8)
+                              .build();
+        char[] message = new char[size];
+        Arrays.fill(message, 'x');
+        event = Log4jLogEvent.newBuilder()
+                             .setLoggerName("benchmark")
+                             .setLevel(org.apache.logging.log4j.Level.INFO)
+                             .setThreadName("main")
+                             .setTimeMillis(System.currentTimeMillis())
+                             .setMessage(new SimpleMessage(new String(message)))
+                             .build();
+        encoder = new EventEncoder(4096);
+    }
+
+    @Benchmark
+    public Event encoder() {
+        return new Event(event.getTimeMillis(), encoder.encode(layout, event));
+    }
+
+    @Benchmark
+    public InputLogEvent string() {
+        InputLogEvent e = new InputLogEvent();
+        e.setTimestamp(event.getTimeMillis());
+        String m = new String(layout.toByteArray(event), StandardCharsets.UTF_8);
+        if (m.length() > 4096) {
+            m = m.substring(0, 4096);
+        }
+        e.setMessage(m);
+        return e;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.model.CreateLogGroupRequest;
+import com.amazonaws.services.logs.model.CreateLogStreamRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of {@link Buffer#flush} to merge, batch and hand over a full buffer, with events appended in order or
+ * with timestamps shuffled within every stripe.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FlushBenchmark {
+    @Param({"10000", "100000"})
+    public int capacity;
+
+    @Param({"1", "8"})
+    public int stripes;
+
+    @Param({"false", "true"})
+    public boolean shuffled;
+
+    private Event[] events;
+    private Buffer buffer;
+    private FlushWait flushWait;
+    private Metrics metrics;
+    private Sender sender;
+    private FlushInfo info;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42L);
+        long time = System.currentTimeMillis();
+        events = new Event[capacity];
+        for (int i = 0; i < capacity; ++i) {
+            long ts = shuffled ? time + random.nextInt(1000) : time + i / 100;
+            events[i] = new Event(ts, String.format("event %d of the flush benchmark with some payload", i));
+        }
+        buffer = new Buffer(capacity, stripes);
+        flushWait = new FlushWait(60);
+        metrics = new Metrics();
+        LocalAWSLogs logs = new LocalAWSLogs(0L, 0.0, 0);
+        logs.createLogGroup(new CreateLogGroupRequest("group"));
+        logs.createLogStream(new CreateLogStreamRequest("group", "stream"));
+        sender = new Sender("benchmark", logs, "group", "stream", null, 4, metrics, null, new Retry(1000L), null);
+        sender.start();
+        info = new FlushInfo(0L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sender.stop();
+    }
+
+    @Setup(Level.Invocation)
+    public void fill() throws InterruptedException {
+        final int per = capacity / stripes;
+        Thread[] threads = new Thread[stripes];
+        for (int t = 0; t < stripes; ++t) {
+            final int from = t * per;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = from; i < from + per; ++i) {
+                        if (!buffer.append(events[i], flushWait)) {
+                            break;
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+    }
+
+    @Benchmark
+    public FlushInfo flush() {
+        info = buffer.flush(sender, info, metrics);
+        return info;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.model.CreateLogGroupRequest;
+import com.amazonaws.services.logs.model.CreateLogStreamRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Time of {@link Buffer#flush}, including the wait for in-flight appends before it starts, while producer threads
+ * keep appending. The sample mode reports the percentiles of every flush.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FlushContentionBenchmark {
+    @Param({"65536"})
+    public int capacity;
+
+    @Param({"8", "64"})
+    public int producers;
+
+    private Buffer buffer;
+    private FlushWait flushWait;
+    private Metrics metrics;
+    private Sender sender;
+    private FlushInfo info;
+    private AtomicBoolean enabled;
+    private Thread[] threads;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final Event event = new Event(System.currentTimeMillis(), "Request processed in 42 ms for user 1234567");
+        buffer = new Buffer(capacity);
+        flushWait = new FlushWait(60);
+        metrics = new Metrics();
+        LocalAWSLogs logs = new LocalAWSLogs(0L, 0.0, 0);
+        logs.createLogGroup(new CreateLogGroupRequest("group"));
+        logs.createLogStream(new CreateLogStreamRequest("group", "stream"));
+        sender = new Sender("benchmark", logs, "group", "stream", null, 4, metrics, null, new Retry(1000L), null);
+        sender.start();
+        info = new FlushInfo(0L);
+        enabled = new AtomicBoolean(true);
+        threads = new Thread[producers];
+        for (int i = 0; i < producers; ++i) {
+            threads[i] = new Thread(String.format("benchmark-producer-%d", i)) {
+                @Override
+                public void run() {
+                    while (enabled.get()) {
+                        if (!buffer.append(event, flushWait)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        enabled.set(false);
+        for (Thread t : threads) {
+            t.join();
+        }
+        sender.stop();
+    }
+
+    @Benchmark
+    public FlushInfo flush() throws InterruptedException {
+        Thread.sleep(1L);
+        info = buffer.flush(sender, info, metrics);
+        return info;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.JsonLayout;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding time of {@link CompactJsonLayout} against a compact {@link JsonLayout} through {@link EventEncoder}; the
+ * bytes per event of each layout are printed at setup.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LayoutBenchmark {
+    @Param({"json", "compact"})
+    public String layout;
+
+    private Layout<?> instance;
+    private LogEvent event;
+    private EventEncoder encoder;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        instance = layout.equals("json")
+                ? JsonLayout.newBuilder()
+                            .setCompact(true)
+                            .setEventEol(false)
+                            .setProperties(true)
+                            .setCharset(StandardCharsets.UTF_8)
+                            .build()
+                : CompactJsonLayout.createLayout(null, null);
+        SortedArrayStringMap context = new SortedArrayStringMap();
+        context.putValue("requestId", "4f1c2a9e-7d35-4b8a-9a0e-2c6d1f3b5e77");
+        context.putValue("user", "1234567");
+        event = Log4jLogEvent.newBuilder()
+                             .setLoggerName("pro.apphub.service.RequestHandler")
+                             .setLevel(org.apache.logging.log4j.Level.INFO)
+                             .setThreadName("http-nio-8080-exec-1")
+                             .setTimeMillis(System.currentTimeMillis())
+                             .setMessage(new ParameterizedMessage("Request processed in {} ms for user {}", 42,
+                                                                  1234567))
+                             .setContextData(context)
+                             .build();
+        encoder = new EventEncoder(4096);
+        byte[] b = encoder.encode(instance, event);
+        System.out.println(String.format("%n%s: %d bytes per event: %s", layout, b.length,
+                                         new String(b, StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public int encode() {
+        return encoder.write(instance, event);
+    }
+}
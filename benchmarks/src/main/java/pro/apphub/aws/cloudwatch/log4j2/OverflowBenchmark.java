@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append throughput of every overflow policy while a slow, throttled {@code local} transport keeps the buffers
+ * full. One of every 20 events is an ERROR, so that sampling has something to keep; the drop counters of the
+ * policy are printed after every trial.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class OverflowBenchmark {
+    @Param({"DROP_NEWEST", "DROP_OLDEST", "SAMPLE(10,WARN)", "BLOCK(10)"})
+    public String policy;
+
+    private LogEvent info;
+    private LogEvent error;
+    private CloudWatchAppender appender;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        System.setProperty("aws.cloudwatch.local.latency", "20");
+        System.setProperty("aws.cloudwatch.local.rate", "5");
+        System.setProperty("aws.cloudwatch.local.retention", "0");
+        info = event(org.apache.logging.log4j.Level.INFO);
+        error = event(org.apache.logging.log4j.Level.ERROR);
+        appender = CloudWatchAppender.newBuilder()
+                                     .setName("benchmark")
+                                     .setGroup("benchmark")
+                                     .setTransport("local")
+                                     .setCapacity(10000)
+                                     .setSpan(1)
+                                     .setBatches(2)
+                                     .setRetryBudget(1000L)
+                                     .setRequestRate(5.0)
+                                     .setOverflowPolicy(policy)
+                                     .setLayout(PatternLayout.newBuilder()
+                                                             .withPattern("%-5level [%t] %logger{1} - %msg%n")
+                                                             .withCharset(StandardCharsets.UTF_8)
+                                                             .build())
+                                     .build();
+        appender.start();
+        while (appender.getStream() == null) {
+            Thread.yield();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        appender.stop();
+        CloudWatchAppenderMetricsMBean m = appender.getMetrics();
+        System.out.println(String.format("%n%s: appended=%d, dropped newest=%d, oldest=%d, sampled=%d, blocked=%d",
+                                         policy, m.getAppendedEvents(), m.getDroppedNewestEvents(),
+                                         m.getDroppedOldestEvents(), m.getDroppedSampledEvents(),
+                                         m.getDroppedBlockedEvents()));
+    }
+
+    @State(Scope.Thread)
+    public static class Counter {
+        public int count;
+    }
+
+    @Benchmark
+    public void append(Counter c) {
+        appender.append((++c.count % 20 == 0) ? error : info);
+    }
+
+    private static LogEvent event(org.apache.logging.log4j.Level level) {
+        return Log4jLogEvent.newBuilder()
+                            .setLoggerName("benchmark")
+                            .setLevel(level)
+                            .setThreadName("main")
+                            .setTimeMillis(System.currentTimeMillis())
+                            .setMessage(new SimpleMessage("Request processed in 42 ms for user 1234567"))
+                            .build();
+    }
+}
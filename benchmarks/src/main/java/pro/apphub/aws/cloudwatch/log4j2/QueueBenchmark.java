@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@link ConcurrentLinkedQueue} plus size counter that {@link Buffer} replaced, drained every millisecond like
+ * {@link BufferBenchmark}, as the baseline of its scaling from 1 to 64 threads.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueueBenchmark {
+    @Param({"100000"})
+    public int capacity;
+
+    private Event event;
+    private ConcurrentLinkedQueue<Event> queue;
+    private AtomicInteger size;
+    private AtomicBoolean enabled;
+    private Thread flusher;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        event = new Event(System.currentTimeMillis(), "Request processed in 42 ms for user 1234567");
+        queue = new ConcurrentLinkedQueue<>();
+        size = new AtomicInteger(0);
+        enabled = new AtomicBoolean(true);
+        flusher = new Thread("benchmark-flush") {
+            @Override
+            public void run() {
+                while (enabled.get()) {
+                    try {
+                        Thread.sleep(1L);
+                    } catch (InterruptedException e) {
+                    }
+                    while (queue.poll() != null) {
+                        size.decrementAndGet();
+                    }
+                }
+            }
+        };
+        flusher.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        enabled.set(false);
+        flusher.join();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean append1() {
+        return append();
+    }
+
+    @Benchmark
+    @Threads(2)
+    public boolean append2() {
+        return append();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean append4() {
+        return append();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean append8() {
+        return append();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean append16() {
+        return append();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public boolean append32() {
+        return append();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean append64() {
+        return append();
+    }
+
+    private boolean append() {
+        if (size.incrementAndGet() <= capacity) {
+            return queue.offer(event);
+        } else {
+            size.decrementAndGet();
+            return false;
+        }
+    }
+}
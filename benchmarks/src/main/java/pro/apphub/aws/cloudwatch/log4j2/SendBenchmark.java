@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.model.CreateLogGroupRequest;
+import com.amazonaws.services.logs.model.CreateLogStreamRequest;
+import com.amazonaws.services.logs.model.InputLogEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batches sent per second to many streams, each with its own {@link Sender}, against {@link LocalAWSLogs} with a
+ * request latency of {@link #LATENCY} ms, on platform or virtual send threads. Virtual threads fall back to platform
+ * ones before JDK 21, which is printed at setup.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SendBenchmark {
+    public static final long LATENCY = 20L;
+
+    @Param({"16", "256", "1024"})
+    public int streams;
+
+    @Param({"false", "true"})
+    public boolean virtual;
+
+    private Sender[] senders;
+    private InputLogEvent event;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        System.setProperty(Threads.PROPERTY, Boolean.toString(virtual));
+        LocalAWSLogs logs = new LocalAWSLogs(LATENCY, 0.0, 0);
+        logs.createLogGroup(new CreateLogGroupRequest("group"));
+        for (int i = 0; i < streams; ++i) {
+            logs.createLogStream(new CreateLogStreamRequest("group", String.format("stream-%d", i)));
+        }
+        Metrics metrics = new Metrics();
+        long time = System.nanoTime();
+        senders = new Sender[streams];
+        for (int i = 0; i < streams; ++i) {
+            String stream = String.format("stream-%d", i);
+            senders[i] = new Sender(stream, logs, "group", stream, null, 2, metrics, null, new Retry(1000L), null);
+            senders[i].start();
+        }
+        System.out.printf("%n%d %s send threads started in %d us%n", streams,
+                          Threads.isVirtual() ? "virtual" : "platform",
+                          TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - time));
+        event = new InputLogEvent().withTimestamp(System.currentTimeMillis()).withMessage("event of the benchmark");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (Sender s : senders) {
+            s.stop();
+        }
+        System.clearProperty(Threads.PROPERTY);
+    }
+
+    @Benchmark
+    public void send() {
+        Sender s = senders[next];
+        next = (next + 1) % senders.length;
+        Batch batch = s.acquire();
+        batch.add(event);
+        s.send(batch);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.model.InputLogEvent;
+
+import java.util.ArrayList;
+
+/**
+ * Events of one PutLogEvents request and the size they take in it, counted by the buffer, queue or spill that fills
+ * the batch, so the sender reports the sent bytes without measuring every message again. Batches are pooled by the
+ * {@link Sender}, which clears them after the request.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class Batch extends ArrayList<InputLogEvent> {
+    private static final long serialVersionUID = 1L;
+
+    public long bytes;
+
+    public Batch() {
+    }
+
+    public Batch(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        bytes = 0L;
+    }
+}
@@ -17,178 +17,253 @@
 
 package pro.apphub.aws.cloudwatch.log4j2;
 
-import com.amazonaws.services.logs.AWSLogs;
-import com.amazonaws.services.logs.model.DataAlreadyAcceptedException;
 import com.amazonaws.services.logs.model.InputLogEvent;
-import com.amazonaws.services.logs.model.InvalidSequenceTokenException;
-import com.amazonaws.services.logs.model.PutLogEventsRequest;
-import com.amazonaws.services.logs.model.PutLogEventsResult;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
 
 /**
+ * Preallocated event slots split into stripes, one per core, that producers claim and publish without touching
+ * the counters of other stripes. The claim and publish counters of every stripe sit in their own 128-byte block
+ * of one array, so producers of neighbouring stripes do not share a cache line; only {@link #close} and
+ * {@link #flush} look at all stripes.
+ *
  * @author Dmitry Kotlyarov
  * @since 1.0
  */
 final class Buffer {
     public static final int MAX_BATCH_COUNT = 10000;
     public static final int MAX_BATCH_SIZE = 1048576;
+    public static final int MIN_STRIPE_CAPACITY = 1024;
+
+    private static final Comparator<Event> COMPARATOR = new Comparator<Event>() {
+        @Override
+        public int compare(Event o1, Event o2) {
+            return (o1.timestamp < o2.timestamp) ? -1 : ((o1.timestamp == o2.timestamp) ? 0 : 1);
+        }
+    };
 
-    private final AtomicBoolean ready = new AtomicBoolean(true);
-    private final AtomicInteger threads = new AtomicInteger(0);
-    private final AtomicInteger size = new AtomicInteger(0);
-    private final int capacity;
-    private final ConcurrentLinkedQueue<InputLogEvent> eventsQueue;
-    private final ArrayList<InputLogEvent> eventsList;
-    private final ArrayList<InputLogEvent> eventsBatch;
+    private static final int CLOSED = Integer.MIN_VALUE;
+    private static final int PAD = 32;
+
+    private final int stripes;
+    private final int stripeCapacity;
+    private final AtomicIntegerArray counters;
+    private final Event[] events;
+    private final int[] counts;
+    private final int[] positions;
+    private final int[] heap;
+    private volatile Thread flusher;
 
     public Buffer(int capacity) {
-        this.capacity = capacity;
-        this.eventsQueue = new ConcurrentLinkedQueue<>();
-        this.eventsList = new ArrayList<>(capacity + 1);
-        this.eventsBatch = new ArrayList<>(Math.min(capacity + 1, MAX_BATCH_COUNT));
+        this(capacity, Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+                                            capacity / MIN_STRIPE_CAPACITY)));
+    }
+
+    public Buffer(int capacity, int stripes) {
+        this.stripes = stripes;
+        this.stripeCapacity = (capacity + stripes - 1) / stripes;
+        this.counters = new AtomicIntegerArray((stripes + 2) * PAD);
+        this.events = new Event[stripes * stripeCapacity + 1];
+        for (int i = 0; i < events.length; ++i) {
+            events[i] = new Event();
+        }
+        this.counts = new int[stripes + 1];
+        this.positions = new int[stripes + 1];
+        this.heap = new int[stripes + 1];
     }
 
     public boolean isReady() {
-        return ready.get();
+        for (int i = 0; i < stripes; ++i) {
+            int st = counters.get(state(i));
+            if ((st >= 0) && (st < stripeCapacity)) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    public boolean append(InputLogEvent event, FlushWait flushWait) {
-        if (ready.get()) {
-            threads.incrementAndGet();
-            try {
-                if (ready.get()) {
-                    if (size.get() < capacity) {
-                        int s = size.getAndIncrement();
-                        if (s < capacity) {
-                            eventsQueue.offer(event);
-                            if (s + 1 == capacity) {
-                                flushWait.signalAll(new Runnable() {
-                                    @Override
-                                    public void run() {
-                                        ready.set(false);
-                                    }
-                                });
-                            }
-                            return true;
-                        } else {
-                            return false;
-                        }
-                    } else {
-                        return false;
+    public int size() {
+        int n = 0;
+        for (int i = 0; i < stripes; ++i) {
+            n += counters.get(state(i)) & ~CLOSED;
+        }
+        return n;
+    }
+
+    public int capacity() {
+        return stripes * stripeCapacity;
+    }
+
+    public boolean append(Event event, FlushWait flushWait) {
+        return append(event.timestamp, event.message, event.length, flushWait);
+    }
+
+    public boolean append(long timestamp, byte[] message, int length, FlushWait flushWait) {
+        int h = stripe(Thread.currentThread().getId(), stripes);
+        for (int i = 0; i < stripes; ++i) {
+            int j = (h + i < stripes) ? h + i : h + i - stripes;
+            int state = state(j);
+            int st = counters.get(state);
+            while ((st >= 0) && (st < stripeCapacity)) {
+                if (counters.compareAndSet(state, st, st + 1)) {
+                    events[j * stripeCapacity + st].set(timestamp, message, length);
+                    int p = counters.incrementAndGet(state + 1);
+                    int cst = counters.get(state);
+                    if ((cst < 0) && ((cst & ~CLOSED) == p)) {
+                        LockSupport.unpark(flusher);
                     }
-                } else {
-                    return false;
+                    if ((st + 1 == stripeCapacity) && !isReady()) {
+                        flushWait.signalAll();
+                    }
+                    return true;
                 }
-            } finally {
-                threads.decrementAndGet();
+                st = counters.get(state);
             }
-        } else {
-            return false;
         }
+        return false;
+    }
+
+    int close() {
+        flusher = Thread.currentThread();
+        int n = 0;
+        for (int i = 0; i < stripes; ++i) {
+            int state = state(i);
+            int st = counters.get(state);
+            while ((st >= 0) && !counters.compareAndSet(state, st, st | CLOSED)) {
+                st = counters.get(state);
+            }
+            counts[i] = st & ~CLOSED;
+            n += counts[i];
+        }
+        for (int i = 0; i < stripes; ++i) {
+            while (counters.get(state(i) + 1) != counts[i]) {
+                LockSupport.park(this);
+            }
+        }
+        return n;
     }
 
-    public FlushInfo flush(AWSLogs client, String group, String stream, FlushInfo info, AtomicLong lost) {
-        ready.set(false);
+    public FlushInfo flush(Sender sender, FlushInfo info, Metrics metrics) {
+        int n = close();
         try {
-            while (threads.get() > 0) {
-                try {
-                    Thread.sleep(500L);
-                } catch (InterruptedException e) {
+            if (n > 0) {
+                int runs = stripes;
+                long l = metrics.takeLost();
+                if (l > 0L) {
+                    byte[] m = String.format("[EVENTS_LOST]: %d", l).getBytes(StandardCharsets.UTF_8);
+                    events[stripes * stripeCapacity].set(System.currentTimeMillis(), m, m.length);
+                    counts[runs++] = 1;
                 }
-            }
-            if (size.get() > 0) {
-                try {
-                    for (InputLogEvent e : eventsQueue) {
-                        eventsList.add(e);
-                    }
-                    long l = lost.getAndSet(0L);
-                    if (l > 0L) {
-                        InputLogEvent e = new InputLogEvent();
-                        e.setTimestamp(System.currentTimeMillis());
-                        e.setMessage(String.format("[EVENTS_LOST]: %d", l));
-                        eventsList.add(e);
-                    }
-                    Collections.sort(eventsList, new Comparator<InputLogEvent>() {
-                        @Override
-                        public int compare(InputLogEvent o1, InputLogEvent o2) {
-                            return o1.getTimestamp().compareTo(o2.getTimestamp());
-                        }
-                    });
-                    long lst = info.last;
-                    if (lst > 0L) {
-                        for (InputLogEvent e : eventsList) {
-                            if (e.getTimestamp() < lst) {
-                                e.setTimestamp(lst);
-                            } else {
+                int hs = 0;
+                for (int i = 0; i < runs; ++i) {
+                    int from = i * stripeCapacity;
+                    int to = from + counts[i];
+                    if (from < to) {
+                        for (int j = from + 1; j < to; ++j) {
+                            if (events[j].timestamp < events[j - 1].timestamp) {
+                                Arrays.sort(events, from, to, COMPARATOR);
                                 break;
                             }
                         }
+                        positions[i] = from;
+                        heap[hs] = i;
+                        up(hs++);
                     }
-                    lst = eventsList.get(eventsList.size() - 1).getTimestamp();
-                    String tok = info.token;
-                    int c = 0;
-                    int s = 0;
-                    for (InputLogEvent e : eventsList) {
-                        int es = e.getMessage().length() * 4 + 26;
-                        if ((c + 1 < MAX_BATCH_COUNT) && (s + es < MAX_BATCH_SIZE)) {
-                            c++;
-                            s += es;
-                            eventsBatch.add(e);
-                        } else {
-                            tok = putEvents(client, group, stream, tok, lost, eventsBatch);
-                            c = 1;
-                            s = es;
-                            eventsBatch.clear();
-                            eventsBatch.add(e);
-                        }
+                }
+                long fst = events[positions[heap[0]]].timestamp;
+                long lst = info.last;
+                Batch batch = sender.allocate();
+                int c = 0;
+                int s = 0;
+                long bytes = 0L;
+                while (hs > 0) {
+                    int r = heap[0];
+                    Event e = events[positions[r]++];
+                    if (positions[r] == r * stripeCapacity + counts[r]) {
+                        heap[0] = heap[--hs];
+                    }
+                    down(0, hs);
+                    if ((c == MAX_BATCH_COUNT) || (s + e.size > MAX_BATCH_SIZE)) {
+                        batch.bytes = s;
+                        sender.send(batch);
+                        c = 0;
+                        s = 0;
+                        batch = sender.allocate();
                     }
-                    tok = putEvents(client, group, stream, tok, lost, eventsBatch);
-                    return new FlushInfo(lst, tok);
-                } finally {
-                    eventsBatch.clear();
-                    eventsList.clear();
-                    eventsQueue.clear();
-                    size.set(0);
+                    c++;
+                    s += e.size;
+                    bytes += e.size;
+                    lst = Math.max(lst, e.timestamp);
+                    batch.add(new InputLogEvent().withTimestamp(lst).withMessage(e.getMessage()));
                 }
+                batch.bytes = s;
+                sender.send(batch);
+                return new FlushInfo(fst, lst, n, bytes);
             } else {
-                return info;
+                return (info.events > 0) ? new FlushInfo(info.last) : info;
             }
         } finally {
-            ready.set(true);
+            for (int i = 0; i < stripes; ++i) {
+                counters.set(state(i) + 1, 0);
+                counters.set(state(i), 0);
+            }
+        }
+    }
+
+    private long head(int run) {
+        return events[positions[run]].timestamp;
+    }
+
+    private void up(int i) {
+        int r = heap[i];
+        long k = head(r);
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (head(heap[p]) <= k) {
+                break;
+            }
+            heap[i] = heap[p];
+            i = p;
         }
+        heap[i] = r;
     }
 
-    private String putEvents(AWSLogs client,
-                             String group,
-                             String stream,
-                             String token,
-                             AtomicLong lost,
-                             ArrayList<InputLogEvent> events) {
-        if (!events.isEmpty()) {
-            try {
-                PutLogEventsRequest req = new PutLogEventsRequest(group, stream, events);
-                req.setSequenceToken(token);
-                PutLogEventsResult res = client.putLogEvents(req);
-                return res.getNextSequenceToken();
-            } catch (DataAlreadyAcceptedException e) {
-                lost.addAndGet(events.size());
-                return e.getExpectedSequenceToken();
-            } catch (InvalidSequenceTokenException e) {
-                lost.addAndGet(events.size());
-                return e.getExpectedSequenceToken();
-            } catch (Exception e) {
-                lost.addAndGet(events.size());
-                return token;
+    private void down(int i, int n) {
+        if (n > 0) {
+            int r = heap[i];
+            long k = head(r);
+            while (true) {
+                int c = (i << 1) + 1;
+                if (c >= n) {
+                    break;
+                }
+                if ((c + 1 < n) && (head(heap[c + 1]) < head(heap[c]))) {
+                    ++c;
+                }
+                if (k <= head(heap[c])) {
+                    break;
+                }
+                heap[i] = heap[c];
+                i = c;
             }
+            heap[i] = r;
+        }
+    }
+
+    private static int state(int stripe) {
+        return (stripe + 1) * PAD;
+    }
+
+    private static int stripe(long id, int stripes) {
+        if (stripes > 1) {
+            long h = id * 0x9E3779B97F4A7C15L;
+            return (int) ((h >>> 33) % stripes);
         } else {
-            return token;
+            return 0;
         }
     }
 }
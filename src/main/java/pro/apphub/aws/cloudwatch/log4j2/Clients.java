@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.AWSLogs;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Process-wide registry of CloudWatch Logs clients, so appenders with the same transport, region, credentials and
+ * compression share one client and its connection pool. A client is created by the first appender that acquires
+ * it, outside of any lock held for other keys, and shut down when the last one releases its key. Transports may hand
+ * out one client for several keys, so a client is always released by the key it was acquired with.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class Clients {
+    private static final ConcurrentHashMap<Key, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    private Clients() {
+    }
+
+    public static AWSLogs acquire(Key key) throws InterruptedException {
+        while (true) {
+            Entry e = ENTRIES.get(key);
+            if (e == null) {
+                Entry ne = new Entry();
+                e = ENTRIES.putIfAbsent(key, ne);
+                if (e == null) {
+                    e = ne;
+                }
+            }
+            e.lock.lockInterruptibly();
+            try {
+                if (ENTRIES.get(key) != e) {
+                    continue;
+                }
+                if (e.client == null) {
+                    try {
+                        e.client = initTransport(key.transport, key.compression).create(key.region, key.access,
+                                                                                        key.secret);
+                    } catch (RuntimeException ex) {
+                        ENTRIES.remove(key, e);
+                        throw ex;
+                    }
+                }
+                ++e.references;
+                return e.client;
+            } finally {
+                e.lock.unlock();
+            }
+        }
+    }
+
+    public static void release(Key key) {
+        Entry e = ENTRIES.get(key);
+        if (e != null) {
+            e.lock.lock();
+            try {
+                if ((e.client != null) && (--e.references == 0)) {
+                    ENTRIES.remove(key, e);
+                    AWSLogs client = e.client;
+                    e.client = null;
+                    try {
+                        client.shutdown();
+                    } catch (UnsupportedOperationException ex) {
+                    }
+                }
+            } finally {
+                e.lock.unlock();
+            }
+        }
+    }
+
+    public static int size() {
+        return ENTRIES.size();
+    }
+
+    private static Transport initTransport(String transport, String compression) {
+        if ((transport == null) || transport.equals("aws")) {
+            return new DefaultTransport(Compression.parse(compression));
+        } else if (transport.equals("local")) {
+            return new LocalTransport();
+        } else {
+            try {
+                return Class.forName(transport).asSubclass(Transport.class).getConstructor().newInstance();
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw new RuntimeException(String.format("Transport '%s' is not created", transport), e);
+            }
+        }
+    }
+
+    private static final class Entry {
+        public final ReentrantLock lock = new ReentrantLock();
+        public AWSLogs client;
+        public int references;
+
+        public Entry() {
+        }
+    }
+
+    static final class Key {
+        public final String transport;
+        public final String region;
+        public final String access;
+        public final String secret;
+        public final String compression;
+        private final int hash;
+
+        public Key(String transport, String region, String access, String secret, String compression) {
+            this.transport = transport;
+            this.region = region;
+            this.access = access;
+            this.secret = secret;
+            this.compression = compression;
+            this.hash = Objects.hash(transport, region, access, secret, compression);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof Key) {
+                Key k = (Key) o;
+                return Objects.equals(transport, k.transport) && Objects.equals(region, k.region)
+                        && Objects.equals(access, k.access) && Objects.equals(secret, k.secret)
+                        && Objects.equals(compression, k.compression);
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -17,42 +17,45 @@
 
 package pro.apphub.aws.cloudwatch.log4j2;
 
-import com.amazonaws.auth.AWSStaticCredentialsProvider;
-import com.amazonaws.auth.BasicAWSCredentials;
-import com.amazonaws.regions.Regions;
 import com.amazonaws.services.logs.AWSLogs;
-import com.amazonaws.services.logs.AWSLogsClientBuilder;
 import com.amazonaws.services.logs.model.CreateLogGroupRequest;
 import com.amazonaws.services.logs.model.CreateLogStreamRequest;
 import com.amazonaws.services.logs.model.DescribeLogGroupsRequest;
 import com.amazonaws.services.logs.model.DescribeLogGroupsResult;
 import com.amazonaws.services.logs.model.DescribeLogStreamsRequest;
 import com.amazonaws.services.logs.model.DescribeLogStreamsResult;
-import com.amazonaws.services.logs.model.InputLogEvent;
 import com.amazonaws.services.logs.model.LogGroup;
 import com.amazonaws.services.logs.model.LogStream;
+import com.amazonaws.services.logs.model.ResourceAlreadyExistsException;
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.Filter;
 import org.apache.logging.log4j.core.Layout;
 import org.apache.logging.log4j.core.LogEvent;
 import org.apache.logging.log4j.core.appender.AbstractAppender;
 import org.apache.logging.log4j.core.config.plugins.Plugin;
-import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
-import org.apache.logging.log4j.core.config.plugins.PluginElement;
-import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+import org.apache.logging.log4j.core.jmx.Server;
 import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.core.util.Constants;
+import org.apache.logging.log4j.core.util.Loader;
+import org.apache.logging.log4j.util.PropertiesUtil;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Serializable;
-import java.net.InetAddress;
-import java.net.URL;
-import java.net.URLConnection;
-import java.net.UnknownHostException;
+import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
+import java.net.URLEncoder;
+import java.nio.channels.OverlappingFileLockException;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 /**
  * @author Dmitry Kotlyarov
@@ -62,87 +65,174 @@ import java.util.concurrent.atomic.AtomicLong;
 public final class CloudWatchAppender extends AbstractAppender {
 	private static final long serialVersionUID = 1L;
 
-	public static final String INSTANCE = retrieveInstance();
-
 	private final AtomicBoolean enabled = new AtomicBoolean(false);
-	private final AtomicBoolean flag = new AtomicBoolean(true);
-	private final AtomicLong lost = new AtomicLong(0L);
+	private final Metrics metrics = new Metrics();
 	private final String group;
-	private final String stream;
-	private final AWSLogs client;
+	private final String streamPrefix;
+	private final String streamPostfix;
+	private final String transport;
+	private final String region;
+	private final String access;
+	private final String secret;
 	private final int capacity;
-	private final Buffer buffer1;
-	private final Buffer buffer2;
 	private final int length;
+	private final ThreadLocal<EventEncoder> encoder;
 	private final int span;
-	private final FlushWait flushWait;
-	private final Thread flushThread;
-	private FlushInfo flushInfo;
+	private final int batches;
+	private final String spillDirectory;
+	private final long retryBudget;
+	private final double requestRate;
+	private final OverflowPolicy overflowPolicy;
+	private final long minFlushInterval;
+	private final boolean adaptiveFlush;
+	private final String queue;
+	private final String waitStrategy;
+	private final long dedupWindow;
+	private final Dedup dedup;
+	private final String compression;
+	private final Route route;
+	private final Level priorityLevel;
+	private final double priorityShare;
+	private final Shard[] shards;
+	private final int threadShards;
+	private volatile String stream;
+	private volatile AWSLogs client;
+	private volatile Clients.Key clientKey;
+	private Thread bootstrapThread;
 
 	public CloudWatchAppender(String name, String group, String streamPrefix, String streamPostfix, String region,
 			String access, String secret, int capacity, int length, int span, Filter filter,
 			Layout<? extends Serializable> layout) {
-		super(name, filter, (layout != null) ? layout : PatternLayout.createDefaultLayout(), false);
+		this(CloudWatchAppender.newBuilder().setName(name).setGroup(group).setStreamPrefix(streamPrefix)
+				.setStreamPostfix(streamPostfix).setRegion(region).setAccess(access).setSecret(secret)
+				.setCapacity(capacity).setLength(length).setSpan(span).setFilter(filter).setLayout(layout));
+	}
+
+	private CloudWatchAppender(Builder<?> builder) {
+		super((builder.getName() != null) ? builder.getName() : "cloudwatch", builder.getFilter(),
+				(builder.getLayout() != null) ? builder.getLayout() : PatternLayout.createDefaultLayout(),
+				builder.isIgnoreExceptions(), builder.getPropertyArray());
 
+		String name = getName();
+		String group = getProperty("aws.cloudwatch.group", "AWS_CLOUDWATCH_GROUP", builder.group, null);
 		if (group != null) {
 			this.group = group;
-			this.stream = initStream(streamPrefix, streamPostfix);
-			this.client = initClient(region, access, secret);
-			if (!checkGroup(group, client)) {
-				CreateLogGroupRequest clgr = new CreateLogGroupRequest(group);
-				client.createLogGroup(clgr);
-
-				if (!checkGroup(group, client))
-					throw new RuntimeException(String.format("Group '%s' is not found", group));
-			}
-			this.capacity = capacity;
-			this.buffer1 = new Buffer(capacity);
-			this.buffer2 = new Buffer(capacity);
-			this.length = length;
-			this.span = span;
-			this.flushWait = new FlushWait(span);
-			this.flushThread = new Thread(String.format("aws-cloudwatch-log4j2-flush-%s", name)) {
+			this.streamPrefix = getProperty("aws.cloudwatch.stream.prefix", "AWS_CLOUDWATCH_STREAM_PREFIX",
+					builder.streamPrefix, null);
+			this.streamPostfix = getProperty("aws.cloudwatch.stream.postfix", "AWS_CLOUDWATCH_STREAM_POSTFIX",
+					builder.streamPostfix, null);
+			this.transport = getProperty("aws.cloudwatch.transport", "AWS_CLOUDWATCH_TRANSPORT", builder.transport,
+					"aws");
+			this.region = getProperty("aws.cloudwatch.region", "AWS_CLOUDWATCH_REGION", builder.region, null);
+			this.access = getProperty("aws.cloudwatch.access", "AWS_CLOUDWATCH_ACCESS", builder.access, null);
+			this.secret = getProperty("aws.cloudwatch.secret", "AWS_CLOUDWATCH_SECRET", builder.secret, null);
+			this.capacity = Integer.parseInt(getProperty("aws.cloudwatch.capacity", "AWS_CLOUDWATCH_CAPACITY",
+					builder.capacity, "10000"));
+			this.length = Integer.parseInt(getProperty("aws.cloudwatch.length", "AWS_CLOUDWATCH_LENGTH",
+					builder.length, "4096"));
+			this.encoder = new ThreadLocal<EventEncoder>() {
 				@Override
-				public void run() {
-					while (enabled.get()) {
-						try {
-							flushWait.await(enabled, buffer1, buffer2);
-							flag.set(false);
-							flushInfo = buffer1.flush(client, CloudWatchAppender.this.group, stream, flushInfo, lost);
-						} catch (Throwable e) {
-						}
-						try {
-							flushWait.await(enabled, buffer1, buffer2);
-							flag.set(true);
-							flushInfo = buffer2.flush(client, CloudWatchAppender.this.group, stream, flushInfo, lost);
-						} catch (Throwable e) {
-						}
-					}
-					try {
-						flag.set(false);
-						flushInfo = buffer1.flush(client, CloudWatchAppender.this.group, stream, flushInfo, lost);
-					} catch (Throwable e) {
-					}
-					try {
-						flag.set(true);
-						flushInfo = buffer2.flush(client, CloudWatchAppender.this.group, stream, flushInfo, lost);
-					} catch (Throwable e) {
-					}
+				protected EventEncoder initialValue() {
+					return new EventEncoder(CloudWatchAppender.this.length);
 				}
 			};
-			this.flushInfo = new FlushInfo(0L, checkStream(group, stream, client));
+			this.span = Integer.parseInt(getProperty("aws.cloudwatch.span", "AWS_CLOUDWATCH_SPAN", builder.span, "60"));
+			this.batches = Integer.parseInt(getProperty("aws.cloudwatch.batches", "AWS_CLOUDWATCH_BATCHES",
+					builder.batches, "4"));
+			int shards = Integer.parseInt(getProperty("aws.cloudwatch.shards", "AWS_CLOUDWATCH_SHARDS",
+					builder.shards, "1"));
+			this.spillDirectory = getProperty("aws.cloudwatch.spill.directory", "AWS_CLOUDWATCH_SPILL_DIRECTORY",
+					builder.spillDirectory, null);
+			int spillSegmentSize = Integer.parseInt(getProperty("aws.cloudwatch.spill.segment.size",
+					"AWS_CLOUDWATCH_SPILL_SEGMENT_SIZE", builder.spillSegmentSize, "16777216"));
+			long spillCapacity = Long.parseLong(getProperty("aws.cloudwatch.spill.capacity",
+					"AWS_CLOUDWATCH_SPILL_CAPACITY", builder.spillCapacity, "1073741824"));
+			this.retryBudget = Long.parseLong(getProperty("aws.cloudwatch.retry.budget", "AWS_CLOUDWATCH_RETRY_BUDGET",
+					builder.retryBudget, "30000"));
+			this.requestRate = Double.parseDouble(getProperty("aws.cloudwatch.request.rate",
+					"AWS_CLOUDWATCH_REQUEST_RATE", builder.requestRate, "5"));
+			this.overflowPolicy = OverflowPolicy.parse(getProperty("aws.cloudwatch.overflow.policy",
+					"AWS_CLOUDWATCH_OVERFLOW_POLICY", builder.overflowPolicy, "DROP_NEWEST"));
+			this.minFlushInterval = Long.parseLong(getProperty("aws.cloudwatch.min.flush.interval",
+					"AWS_CLOUDWATCH_MIN_FLUSH_INTERVAL", builder.minFlushInterval, "200"));
+			this.adaptiveFlush = Boolean.parseBoolean(getProperty("aws.cloudwatch.adaptive.flush",
+					"AWS_CLOUDWATCH_ADAPTIVE_FLUSH", builder.adaptiveFlush, "true"));
+			this.queue = initQueue(getProperty("aws.cloudwatch.queue", "AWS_CLOUDWATCH_QUEUE", builder.queue, "buffer"),
+					name);
+			this.waitStrategy = getProperty("aws.cloudwatch.wait.strategy", "AWS_CLOUDWATCH_WAIT_STRATEGY",
+					builder.waitStrategy, PropertiesUtil.getProperties().getStringProperty("AsyncLogger.WaitStrategy",
+							DisruptorQueue.DEFAULT_WAIT_STRATEGY));
+			this.dedupWindow = Long.parseLong(getProperty("aws.cloudwatch.dedup.window", "AWS_CLOUDWATCH_DEDUP_WINDOW",
+					builder.dedupWindow, "0"));
+			int dedupSize = Integer.parseInt(getProperty("aws.cloudwatch.dedup.size", "AWS_CLOUDWATCH_DEDUP_SIZE",
+					builder.dedupSize, "1024"));
+			this.dedup = (dedupWindow > 0L) ? new Dedup(name, dedupWindow, dedupSize, metrics) {
+				@Override
+				protected void emit(LogEvent summary) {
+					write(summary);
+				}
+			} : null;
+			String compression = getProperty("aws.cloudwatch.compression", "AWS_CLOUDWATCH_COMPRESSION",
+					builder.compression, "none");
+			this.compression = (Compression.parse(compression) != null) ? compression : "none";
+			this.route = Route.parse(getProperty("aws.cloudwatch.route", "AWS_CLOUDWATCH_ROUTE", builder.route,
+					"thread"), getProperty("aws.cloudwatch.routes", "AWS_CLOUDWATCH_ROUTES", builder.routes, null));
+			this.priorityLevel = Level.valueOf(getProperty("aws.cloudwatch.priority.level",
+					"AWS_CLOUDWATCH_PRIORITY_LEVEL", builder.priorityLevel, "WARN"));
+			this.priorityShare = Double.parseDouble(getProperty("aws.cloudwatch.priority.share",
+					"AWS_CLOUDWATCH_PRIORITY_SHARE", builder.priorityShare, "0"));
+			if ((priorityShare < 0.0) || (priorityShare >= 1.0)) {
+				throw new IllegalArgumentException(String.format("Priority share %s is not in [0, 1)", priorityShare));
+			}
+			Retry retry = new Retry(retryBudget);
+			File spillRoot = (spillDirectory != null)
+					? new File(new File(spillDirectory, encode(name)), encode(group)) : null;
+			this.threadShards = shards;
+			int count = shards + ((this.route != null) ? this.route.size() : 0);
+			this.shards = new Shard[count];
+			for (int i = 0; i < count; ++i) {
+				String n = (i >= shards) ? String.format("%s-%s", name, this.route.value(i - shards))
+						: (shards > 1) ? String.format("%s-%d", name, i) : name;
+				String d = (i >= shards) ? String.format("route-%s", encode(this.route.value(i - shards)))
+						: String.format("thread-%d", i);
+				Spill spill = (spillRoot != null)
+						? new Spill(new File(spillRoot, d), spillSegmentSize, spillCapacity / count) : null;
+				RateLimiter limiter = (requestRate > 0.0) ? new RateLimiter(requestRate) : null;
+				FlushSchedule schedule = new FlushSchedule(minFlushInterval, span * 1000L, adaptiveFlush, capacity);
+				this.shards[i] = new Shard(n, null, group, null, null, capacity, (int) (capacity * priorityShare),
+						this.priorityLevel, schedule, batches, spill, retry,
+						limiter, this.overflowPolicy, this.queue, this.waitStrategy, enabled, metrics);
+			}
+			metrics.setShards(this.shards);
 		} else {
 			this.group = null;
-			this.stream = null;
-			this.client = null;
+			this.streamPrefix = null;
+			this.streamPostfix = null;
+			this.transport = null;
+			this.region = null;
+			this.access = null;
+			this.secret = null;
 			this.capacity = 0;
-			this.buffer1 = null;
-			this.buffer2 = null;
 			this.length = 0;
+			this.encoder = null;
 			this.span = 0;
-			this.flushWait = null;
-			this.flushThread = null;
-			this.flushInfo = null;
+			this.batches = 0;
+			this.spillDirectory = null;
+			this.retryBudget = 0L;
+			this.requestRate = 0.0;
+			this.overflowPolicy = null;
+			this.minFlushInterval = 0L;
+			this.adaptiveFlush = false;
+			this.queue = null;
+			this.waitStrategy = null;
+			this.dedupWindow = 0L;
+			this.dedup = null;
+			this.compression = null;
+			this.route = null;
+			this.priorityLevel = null;
+			this.priorityShare = 0.0;
+			this.shards = null;
+			this.threadShards = 0;
 		}
 	}
 
@@ -158,6 +248,10 @@ public final class CloudWatchAppender extends AbstractAppender {
 		return stream;
 	}
 
+	public String getTransport() {
+		return transport;
+	}
+
 	public int getCapacity() {
 		return capacity;
 	}
@@ -170,13 +264,93 @@ public final class CloudWatchAppender extends AbstractAppender {
 		return span;
 	}
 
+	public int getBatches() {
+		return batches;
+	}
+
+	public String getSpillDirectory() {
+		return spillDirectory;
+	}
+
+	public long getRetryBudget() {
+		return retryBudget;
+	}
+
+	public double getRequestRate() {
+		return requestRate;
+	}
+
+	public String getOverflowPolicy() {
+		return (overflowPolicy != null) ? overflowPolicy.toString() : null;
+	}
+
+	public long getMinFlushInterval() {
+		return minFlushInterval;
+	}
+
+	public boolean isAdaptiveFlush() {
+		return adaptiveFlush;
+	}
+
+	public String getQueue() {
+		return queue;
+	}
+
+	public String getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	public long getDedupWindow() {
+		return dedupWindow;
+	}
+
+	public String getCompression() {
+		return compression;
+	}
+
+	public String getRoute() {
+		return (route != null) ? route.toString() : "thread";
+	}
+
+	public String getPriorityLevel() {
+		return (priorityLevel != null) ? priorityLevel.name() : null;
+	}
+
+	public double getPriorityShare() {
+		return priorityShare;
+	}
+
+	public int getShards() {
+		return (shards != null) ? shards.length : 0;
+	}
+
+	public CloudWatchAppenderMetricsMBean getMetrics() {
+		return metrics;
+	}
+
 	@Override
 	public void start() {
 		super.start();
 		if (group != null) {
 			enabled.set(true);
-			flushThread.setDaemon(false);
-			flushThread.start();
+			for (Shard s : shards) {
+				if (s.getSpill() != null) {
+					openSpill(s.getSpill());
+				}
+				s.start();
+			}
+			if (dedup != null) {
+				dedup.start();
+			}
+			bootstrapThread = new Thread(String.format("aws-cloudwatch-log4j2-bootstrap-%s", getName())) {
+				@Override
+				public void run() {
+					bootstrap();
+				}
+			};
+			bootstrapThread.setDaemon(true);
+			bootstrapThread.start();
+			registerMetrics();
 		}
 	}
 
@@ -184,82 +358,169 @@ public final class CloudWatchAppender extends AbstractAppender {
 	public void stop() {
 		super.stop();
 		if (group != null) {
+			if (dedup != null) {
+				dedup.stop();
+			}
 			enabled.set(false);
-			flushWait.signalAll();
-			try {
-				flushThread.join();
-			} catch (InterruptedException e) {
+			if (bootstrapThread != null) {
+				bootstrapThread.interrupt();
+				try {
+					bootstrapThread.join();
+				} catch (InterruptedException e) {
+				}
+			}
+			for (Shard s : shards) {
+				if (!s.isBound()) {
+					s.abandon();
+				}
 			}
+			for (Shard s : shards) {
+				s.signal();
+			}
+			for (Shard s : shards) {
+				s.drain();
+			}
+			for (Shard s : shards) {
+				s.join();
+			}
+			if (clientKey != null) {
+				Clients.release(clientKey);
+				clientKey = null;
+				client = null;
+			}
+			unregisterMetrics();
+			LOGGER.info("CloudWatchAppender '{}' stopped: {}", getName(), metrics);
 		}
 	}
 
 	@Override
 	public void append(LogEvent event) {
+		if ((dedup == null) || dedup.accept(event)) {
+			write(event);
+		}
+	}
+
+	private void write(LogEvent event) {
 		if (enabled.get()) {
-			InputLogEvent e = new InputLogEvent();
-			e.setTimestamp(event.getTimeMillis());
-			String msg = new String(getLayout().toByteArray(event));
-			if (msg.length() > length) {
-				msg = msg.substring(0, length);
+			EventEncoder ee = Constants.ENABLE_THREADLOCALS ? encoder.get() : new EventEncoder(length);
+			int n = ee.write(getLayout(), event);
+			int r = (route != null) ? route.select(event) : -1;
+			Shard s = (r >= 0) ? shards[threadShards + r]
+					: (threadShards > 1) ? shards[(int) (Thread.currentThread().getId() % threadShards)] : shards[0];
+			if (s.append(event.getTimeMillis(), ee.array(), n, event.getLevel())) {
+				metrics.append();
 			}
-			e.setMessage(msg);
-			if (flag.get()) {
-				if (!buffer1.append(e, flushWait)) {
-					if (!buffer2.append(e, flushWait)) {
-						lost.incrementAndGet();
+		}
+	}
+
+	@PluginBuilderFactory
+	public static <B extends Builder<B>> B newBuilder() {
+		return new Builder<B>().asBuilder();
+	}
+
+	/**
+	 * @deprecated Use {@link #newBuilder()}.
+	 */
+	@Deprecated
+	public static CloudWatchAppender createAppender(String name, String group, String streamPrefix,
+			String streamPostfix, String region, String access, String secret, String capacity, String length,
+			String span, Filter filter, Layout<? extends Serializable> layout) {
+		return CloudWatchAppender.newBuilder().setName(name).setGroup(group).setStreamPrefix(streamPrefix)
+				.setStreamPostfix(streamPostfix).setRegion(region).setAccess(access).setSecret(secret)
+				.setCapacity((capacity != null) ? Integer.valueOf(capacity) : null)
+				.setLength((length != null) ? Integer.valueOf(length) : null)
+				.setSpan((span != null) ? Integer.valueOf(span) : null).setFilter(filter).setLayout(layout).build();
+	}
+
+	public static String getInstance() {
+		return Instance.get();
+	}
+
+	private void bootstrap() {
+		Retry retry = new Retry(0L, 1000L, 60000L);
+		int attempt = 0;
+		while (enabled.get()) {
+			try {
+				String s = initStream(streamPrefix, streamPostfix);
+				AWSLogs c = client;
+				if (c == null) {
+					Clients.Key k = new Clients.Key(transport, region, access, secret, compression);
+					c = Clients.acquire(k);
+					clientKey = k;
+					client = c;
+				}
+				if (!checkGroup(group, c)) {
+					try {
+						c.createLogGroup(new CreateLogGroupRequest(group));
+					} catch (ResourceAlreadyExistsException e) {
 					}
 				}
-			} else {
-				if (!buffer2.append(e, flushWait)) {
-					if (!buffer1.append(e, flushWait)) {
-						lost.incrementAndGet();
+				for (int i = 0; i < shards.length; ++i) {
+					if (!shards[i].isBound()) {
+						String ss = (i >= threadShards) ? String.format("%s/%s", s, route.value(i - threadShards))
+								: (threadShards > 1) ? String.format("%s-%d", s, i) : s;
+						shards[i].bind(c, ss, checkStream(group, ss, c));
 					}
 				}
+				stream = s;
+				return;
+			} catch (InterruptedException e) {
+				return;
+			} catch (Exception e) {
+				if (!enabled.get() || Thread.currentThread().isInterrupted()) {
+					return;
+				}
+				LOGGER.warn("CloudWatchAppender '{}' is not bootstrapped, attempt {}", getName(), attempt + 1, e);
+				try {
+					Thread.sleep(retry.delay(attempt++));
+				} catch (InterruptedException e1) {
+					return;
+				}
 			}
 		}
 	}
 
-	@PluginFactory
-	public static CloudWatchAppender createAppender(@PluginAttribute("name") String name,
-			@PluginAttribute("group") String group, @PluginAttribute("streamPrefix") String streamPrefix,
-			@PluginAttribute("streamPostfix") String streamPostfix, @PluginAttribute("region") String region,
-			@PluginAttribute("access") String access, @PluginAttribute("secret") String secret,
-			@PluginAttribute("capacity") String capacity, @PluginAttribute("length") String length,
-			@PluginAttribute("span") String span, @PluginElement("Filter") Filter filter,
-			@PluginElement("Layout") Layout<? extends Serializable> layout) {
-		return new CloudWatchAppender((name != null) ? name : "cloudwatch",
-				getProperty("aws.cloudwatch.group", "AWS_CLOUDWATCH_GROUP", group, null),
-				getProperty("aws.cloudwatch.stream.prefix", "AWS_CLOUDWATCH_STREAM_PREFIX", streamPrefix, null),
-				getProperty("aws.cloudwatch.stream.postfix", "AWS_CLOUDWATCH_STREAM_POSTFIX", streamPostfix, null),
-				getProperty("aws.cloudwatch.region", "AWS_CLOUDWATCH_REGION", region, null),
-				getProperty("aws.cloudwatch.access", "AWS_CLOUDWATCH_ACCESS", access, null),
-				getProperty("aws.cloudwatch.secret", "AWS_CLOUDWATCH_SECRET", secret, null),
-				Integer.parseInt(getProperty("aws.cloudwatch.capacity", "AWS_CLOUDWATCH_CAPACITY", capacity, "10000")),
-				Integer.parseInt(getProperty("aws.cloudwatch.length", "AWS_CLOUDWATCH_LENGTH", length, "4096")),
-				Integer.parseInt(getProperty("aws.cloudwatch.span", "AWS_CLOUDWATCH_SPAN", span, "60")), filter,
-				layout);
-	}
-
-	private static String retrieveInstance() {
-		try {
-			URL url = new URL("http://169.254.169.254/latest/meta-data/instance-id");
-			URLConnection conn = url.openConnection();
-			conn.setConnectTimeout(10000);
-			try (InputStream in = conn.getInputStream()) {
-				BufferedReader r = new BufferedReader(new InputStreamReader(in));
-				String instance = r.readLine();
-				if (instance != null) {
-					return instance;
-				} else {
-					throw new IOException("Instance is null");
+	private ObjectName getMetricsName() throws MalformedObjectNameException {
+		return new ObjectName(String.format("pro.apphub.aws.cloudwatch.log4j2:type=CloudWatchAppender,name=%s",
+				Server.escape(getName())));
+	}
+
+	private void registerMetrics() {
+		if (!PropertiesUtil.getProperties().getBooleanProperty("log4j2.disable.jmx")) {
+			try {
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				ObjectName on = getMetricsName();
+				if (server.isRegistered(on)) {
+					server.unregisterMBean(on);
 				}
+				server.registerMBean(new StandardMBean(metrics, CloudWatchAppenderMetricsMBean.class), on);
+			} catch (JMException e) {
+				LOGGER.warn("CloudWatchAppender '{}' metrics are not registered", getName(), e);
 			}
-		} catch (IOException e) {
-			try {
-				return InetAddress.getLocalHost().getHostName();
-			} catch (UnknownHostException e1) {
-				throw new RuntimeException(e1);
+		}
+	}
+
+	private void unregisterMetrics() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName on = getMetricsName();
+			if (server.isRegistered(on)) {
+				server.unregisterMBean(on);
 			}
+		} catch (JMException e) {
+			LOGGER.warn("CloudWatchAppender '{}' metrics are not unregistered", getName(), e);
+		}
+	}
+
+	private void openSpill(Spill spill) {
+		try {
+			spill.open();
+		} catch (OverlappingFileLockException e) {
+			LOGGER.error("CloudWatchAppender '{}' does not spill, directory '{}' is locked by another appender",
+					getName(), spill.getDirectory());
+		} catch (IOException e) {
+			LOGGER.error("CloudWatchAppender '{}' does not spill, directory '{}' is not opened", getName(),
+					spill.getDirectory(), e);
 		}
 	}
 
@@ -272,7 +533,7 @@ public final class CloudWatchAppender extends AbstractAppender {
 		}
 	}
 
-	private static String getProperty(String property, String variable, String value, String def) {
+	private static String getProperty(String property, String variable, Object value, String def) {
 		String v = System.getProperty(property);
 		if (v != null) {
 			return v;
@@ -282,7 +543,7 @@ public final class CloudWatchAppender extends AbstractAppender {
 				return v;
 			} else {
 				if (value != null) {
-					return value;
+					return value.toString();
 				} else {
 					return def;
 				}
@@ -291,7 +552,7 @@ public final class CloudWatchAppender extends AbstractAppender {
 	}
 
 	private static String initStream(String prefix, String postfix) {
-		String s = INSTANCE;
+		String s = Instance.get();
 		if (prefix != null) {
 			s = String.format("%s/%s", prefix, s);
 		}
@@ -301,18 +562,27 @@ public final class CloudWatchAppender extends AbstractAppender {
 		return s;
 	}
 
-	private static AWSLogs initClient(String region, String access, String secret) {
-		AWSLogsClientBuilder builder;
-		if ((access != null) && (secret != null)) {
-			BasicAWSCredentials credentials = new BasicAWSCredentials(access, secret);
-			builder = AWSLogsClientBuilder.standard().withCredentials(new AWSStaticCredentialsProvider(credentials));
-		} else {
-			builder = AWSLogsClientBuilder.standard();
+	private static String encode(String value) {
+		try {
+			return URLEncoder.encode(value, "UTF-8").replace("*", "%2A");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
 		}
-		if (region != null) {
-			builder.withRegion(Regions.fromName(region));
+	}
+
+	private static String initQueue(String queue, String name) {
+		if ((queue == null) || queue.equalsIgnoreCase("buffer")) {
+			return "buffer";
+		} else if (queue.equalsIgnoreCase("disruptor")) {
+			if (Loader.isClassAvailable("com.lmax.disruptor.RingBuffer")) {
+				return "disruptor";
+			} else {
+				LOGGER.error("CloudWatchAppender '{}' uses the buffer queue, the LMAX Disruptor is not found", name);
+				return "buffer";
+			}
+		} else {
+			throw new IllegalArgumentException(String.format("Queue '%s' is not valid", queue));
 		}
-		return builder.build();
 	}
 
 	private static boolean checkGroup(String group, AWSLogs client) {
@@ -347,4 +617,253 @@ public final class CloudWatchAppender extends AbstractAppender {
 		client.createLogStream(new CreateLogStreamRequest(group, stream));
 		return null;
 	}
+
+	/**
+	 * Builder of the appender with the attributes of the {@code CloudWatchAppender} element. An attribute that is not
+	 * set falls back to its {@code aws.cloudwatch.*} system property, its {@code AWS_CLOUDWATCH_*} environment variable
+	 * and then its default; a system property or environment variable that is set overrides the attribute.
+	 */
+	public static class Builder<B extends Builder<B>> extends AbstractAppender.Builder<B>
+			implements org.apache.logging.log4j.core.util.Builder<CloudWatchAppender> {
+		@PluginBuilderAttribute
+		private String group;
+
+		@PluginBuilderAttribute
+		private String streamPrefix;
+
+		@PluginBuilderAttribute
+		private String streamPostfix;
+
+		@PluginBuilderAttribute
+		private String transport;
+
+		@PluginBuilderAttribute
+		private String region;
+
+		@PluginBuilderAttribute(sensitive = true)
+		private String access;
+
+		@PluginBuilderAttribute(sensitive = true)
+		private String secret;
+
+		@PluginBuilderAttribute
+		private Integer capacity;
+
+		@PluginBuilderAttribute
+		private Integer length;
+
+		@PluginBuilderAttribute
+		private Integer span;
+
+		@PluginBuilderAttribute
+		private Integer batches;
+
+		@PluginBuilderAttribute
+		private Integer shards;
+
+		@PluginBuilderAttribute
+		private String spillDirectory;
+
+		@PluginBuilderAttribute
+		private Integer spillSegmentSize;
+
+		@PluginBuilderAttribute
+		private Long spillCapacity;
+
+		@PluginBuilderAttribute
+		private Long retryBudget;
+
+		@PluginBuilderAttribute
+		private Double requestRate;
+
+		@PluginBuilderAttribute
+		private String overflowPolicy;
+
+		@PluginBuilderAttribute
+		private Long minFlushInterval;
+
+		@PluginBuilderAttribute
+		private Boolean adaptiveFlush;
+
+		@PluginBuilderAttribute
+		private String queue;
+
+		@PluginBuilderAttribute
+		private String waitStrategy;
+
+		@PluginBuilderAttribute
+		private Long dedupWindow;
+
+		@PluginBuilderAttribute
+		private Integer dedupSize;
+
+		@PluginBuilderAttribute
+		private String compression;
+
+		@PluginBuilderAttribute
+		private String route;
+
+		@PluginBuilderAttribute
+		private String routes;
+
+		@PluginBuilderAttribute
+		private String priorityLevel;
+
+		@PluginBuilderAttribute
+		private Double priorityShare;
+
+		public Builder() {
+			setIgnoreExceptions(false);
+		}
+
+		public B setGroup(String group) {
+			this.group = group;
+			return asBuilder();
+		}
+
+		public B setStreamPrefix(String streamPrefix) {
+			this.streamPrefix = streamPrefix;
+			return asBuilder();
+		}
+
+		public B setStreamPostfix(String streamPostfix) {
+			this.streamPostfix = streamPostfix;
+			return asBuilder();
+		}
+
+		public B setTransport(String transport) {
+			this.transport = transport;
+			return asBuilder();
+		}
+
+		public B setRegion(String region) {
+			this.region = region;
+			return asBuilder();
+		}
+
+		public B setAccess(String access) {
+			this.access = access;
+			return asBuilder();
+		}
+
+		public B setSecret(String secret) {
+			this.secret = secret;
+			return asBuilder();
+		}
+
+		public B setCapacity(Integer capacity) {
+			this.capacity = capacity;
+			return asBuilder();
+		}
+
+		public B setLength(Integer length) {
+			this.length = length;
+			return asBuilder();
+		}
+
+		public B setSpan(Integer span) {
+			this.span = span;
+			return asBuilder();
+		}
+
+		public B setBatches(Integer batches) {
+			this.batches = batches;
+			return asBuilder();
+		}
+
+		public B setShards(Integer shards) {
+			this.shards = shards;
+			return asBuilder();
+		}
+
+		public B setSpillDirectory(String spillDirectory) {
+			this.spillDirectory = spillDirectory;
+			return asBuilder();
+		}
+
+		public B setSpillSegmentSize(Integer spillSegmentSize) {
+			this.spillSegmentSize = spillSegmentSize;
+			return asBuilder();
+		}
+
+		public B setSpillCapacity(Long spillCapacity) {
+			this.spillCapacity = spillCapacity;
+			return asBuilder();
+		}
+
+		public B setRetryBudget(Long retryBudget) {
+			this.retryBudget = retryBudget;
+			return asBuilder();
+		}
+
+		public B setRequestRate(Double requestRate) {
+			this.requestRate = requestRate;
+			return asBuilder();
+		}
+
+		public B setOverflowPolicy(String overflowPolicy) {
+			this.overflowPolicy = overflowPolicy;
+			return asBuilder();
+		}
+
+		public B setMinFlushInterval(Long minFlushInterval) {
+			this.minFlushInterval = minFlushInterval;
+			return asBuilder();
+		}
+
+		public B setAdaptiveFlush(Boolean adaptiveFlush) {
+			this.adaptiveFlush = adaptiveFlush;
+			return asBuilder();
+		}
+
+		public B setQueue(String queue) {
+			this.queue = queue;
+			return asBuilder();
+		}
+
+		public B setWaitStrategy(String waitStrategy) {
+			this.waitStrategy = waitStrategy;
+			return asBuilder();
+		}
+
+		public B setDedupWindow(Long dedupWindow) {
+			this.dedupWindow = dedupWindow;
+			return asBuilder();
+		}
+
+		public B setDedupSize(Integer dedupSize) {
+			this.dedupSize = dedupSize;
+			return asBuilder();
+		}
+
+		public B setCompression(String compression) {
+			this.compression = compression;
+			return asBuilder();
+		}
+
+		public B setRoute(String route) {
+			this.route = route;
+			return asBuilder();
+		}
+
+		public B setRoutes(String routes) {
+			this.routes = routes;
+			return asBuilder();
+		}
+
+		public B setPriorityLevel(String priorityLevel) {
+			this.priorityLevel = priorityLevel;
+			return asBuilder();
+		}
+
+		public B setPriorityShare(Double priorityShare) {
+			this.priorityShare = priorityShare;
+			return asBuilder();
+		}
+
+		@Override
+		public CloudWatchAppender build() {
+			return new CloudWatchAppender(this);
+		}
+	}
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+/**
+ * Management interface of the metrics of one {@link CloudWatchAppender}, registered under
+ * {@code pro.apphub.aws.cloudwatch.log4j2:type=CloudWatchAppender,name=<appender>}.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public interface CloudWatchAppenderMetricsMBean {
+    long getAppendedEvents();
+
+    long getDroppedEvents();
+
+    long getDroppedNewestEvents();
+
+    long getDroppedOldestEvents();
+
+    long getDroppedSampledEvents();
+
+    long getDroppedBlockedEvents();
+
+    long getRepeatedEvents();
+
+    long getPriorityEvents();
+
+    long getPriorityDroppedEvents();
+
+    double getPriorityLatency50();
+
+    double getPriorityLatency99();
+
+    long getNormalDroppedEvents();
+
+    double getNormalLatency50();
+
+    double getNormalLatency99();
+
+    long getBufferedEvents();
+
+    long getBufferCapacity();
+
+    long getFlushes();
+
+    double getFlushDurationAverage();
+
+    double getFlushDurationMax();
+
+    double getFlushInterval();
+
+    double getFlushIntervalAverage();
+
+    double getEventRate();
+
+    double getByteRate();
+
+    long getRequests();
+
+    long getRetries();
+
+    long getFailedRequests();
+
+    long getSentBatches();
+
+    long getSentEvents();
+
+    long getSentBytes();
+
+    long getAlreadyAcceptedEvents();
+
+    double getEventsPerBatch();
+
+    double getBytesPerBatch();
+
+    double getRequestLatency50();
+
+    double getRequestLatency90();
+
+    double getRequestLatency99();
+
+    double getRequestLatencyMax();
+
+    void reset();
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.Node;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.core.layout.AbstractStringLayout;
+import org.apache.logging.log4j.core.layout.ByteBufferDestination;
+import org.apache.logging.log4j.core.util.Constants;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.util.ReadOnlyStringMap;
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+import org.apache.logging.log4j.util.TriConsumer;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single-line JSON layout that writes UTF-8 bytes directly, without whitespace, reflection or a JSON library.
+ * Field names are short keys written from pre-encoded bytes:
+ * <ul>
+ * <li>{@code t} - time in milliseconds since the epoch;</li>
+ * <li>{@code l} - level;</li>
+ * <li>{@code n} - logger name;</li>
+ * <li>{@code th} - thread name;</li>
+ * <li>{@code m} - formatted message;</li>
+ * <li>{@code x} - thrown exception with its stack trace;</li>
+ * <li>{@code c} - context map.</li>
+ * </ul>
+ * Fields are dropped with the {@code exclude} attribute, a comma-separated list of the names {@code time},
+ * {@code level}, {@code logger}, {@code thread}, {@code message}, {@code thrown} and {@code context} (default
+ * {@code time}, which CloudWatch keeps as the event timestamp). The {@code contextKeys} attribute limits the context
+ * map to the listed keys. Levels and the first {@link #MAX_LOGGERS} logger names are cached in their encoded form.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+@Plugin(name = "CompactJsonLayout", category = Node.CATEGORY, elementType = Layout.ELEMENT_TYPE, printObject = true)
+public final class CompactJsonLayout extends AbstractStringLayout {
+    public static final int MAX_LOGGERS = 4096;
+
+    private static final byte[] TIME = ascii("\"t\":");
+    private static final byte[] LEVEL = ascii("\"l\":");
+    private static final byte[] LOGGER = ascii("\"n\":");
+    private static final byte[] THREAD = ascii("\"th\":");
+    private static final byte[] MESSAGE = ascii("\"m\":");
+    private static final byte[] THROWN = ascii("\"x\":");
+    private static final byte[] CONTEXT = ascii("\"c\":");
+    private static final byte[] HEX = ascii("0123456789abcdef");
+    private static final TriConsumer<String, Object, Writer> CONTEXT_WRITER =
+            new TriConsumer<String, Object, Writer>() {
+                @Override
+                public void accept(String key, Object value, Writer writer) {
+                    writer.entry(key, value);
+                }
+            };
+
+    private final boolean time;
+    private final boolean level;
+    private final boolean logger;
+    private final boolean thread;
+    private final boolean message;
+    private final boolean thrown;
+    private final boolean context;
+    private final String[] contextKeys;
+    private final ConcurrentHashMap<Level, byte[]> levels = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, byte[]> loggers = new ConcurrentHashMap<>();
+    private final ThreadLocal<Writer> writer = new ThreadLocal<Writer>() {
+        @Override
+        protected Writer initialValue() {
+            return new Writer();
+        }
+    };
+
+    public CompactJsonLayout(String exclude, String contextKeys) {
+        super(StandardCharsets.UTF_8);
+        String e = String.format(",%s,", (exclude != null) ? exclude.replaceAll("\\s+", "").toLowerCase() : "time");
+        this.time = !e.contains(",time,");
+        this.level = !e.contains(",level,");
+        this.logger = !e.contains(",logger,");
+        this.thread = !e.contains(",thread,");
+        this.message = !e.contains(",message,");
+        this.thrown = !e.contains(",thrown,");
+        this.context = !e.contains(",context,");
+        this.contextKeys = ((contextKeys != null) && !contextKeys.trim().isEmpty())
+                ? contextKeys.trim().split("\\s*,\\s*")
+                : null;
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/json; charset=UTF-8";
+    }
+
+    @Override
+    public String toSerializable(LogEvent event) {
+        Writer w = write(event);
+        return new String(w.buffer, 0, w.position, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] toByteArray(LogEvent event) {
+        Writer w = write(event);
+        return Arrays.copyOf(w.buffer, w.position);
+    }
+
+    @Override
+    public void encode(LogEvent event, ByteBufferDestination destination) {
+        Writer w = write(event);
+        destination.writeBytes(w.buffer, 0, w.position);
+    }
+
+    @PluginFactory
+    public static CompactJsonLayout createLayout(@PluginAttribute("exclude") String exclude,
+                                                 @PluginAttribute("contextKeys") String contextKeys) {
+        return new CompactJsonLayout(exclude, contextKeys);
+    }
+
+    private Writer write(LogEvent event) {
+        Writer w = Constants.ENABLE_THREADLOCALS ? writer.get() : new Writer();
+        w.position = 0;
+        w.first = true;
+        w.raw((byte) '{');
+        if (time) {
+            w.name(TIME);
+            w.number(event.getTimeMillis());
+        }
+        if (level && (event.getLevel() != null)) {
+            w.name(LEVEL);
+            w.raw(level(event.getLevel()));
+        }
+        if (logger && (event.getLoggerName() != null)) {
+            w.name(LOGGER);
+            byte[] b = logger(event.getLoggerName());
+            if (b != null) {
+                w.raw(b);
+            } else {
+                w.string(event.getLoggerName());
+            }
+        }
+        if (thread && (event.getThreadName() != null)) {
+            w.name(THREAD);
+            w.string(event.getThreadName());
+        }
+        Message m = event.getMessage();
+        if (message && (m != null)) {
+            w.name(MESSAGE);
+            if (m instanceof StringBuilderFormattable) {
+                StringBuilder sb = w.builder;
+                sb.setLength(0);
+                ((StringBuilderFormattable) m).formatTo(sb);
+                w.string(sb);
+            } else {
+                w.string(m.getFormattedMessage());
+            }
+        }
+        if (thrown && (event.getThrown() != null)) {
+            StringWriter sw = new StringWriter();
+            event.getThrown().printStackTrace(new PrintWriter(sw));
+            w.name(THROWN);
+            w.string(sw.toString());
+        }
+        ReadOnlyStringMap cd = event.getContextData();
+        if (context && (cd != null) && !cd.isEmpty()) {
+            int p = w.position;
+            boolean f = w.first;
+            w.name(CONTEXT);
+            w.raw((byte) '{');
+            w.first = true;
+            if (contextKeys != null) {
+                for (String k : contextKeys) {
+                    Object v = cd.getValue(k);
+                    if (v != null) {
+                        w.entry(k, v);
+                    }
+                }
+            } else {
+                cd.forEach(CONTEXT_WRITER, w);
+            }
+            if (w.first) {
+                w.position = p;
+                w.first = f;
+            } else {
+                w.raw((byte) '}');
+                w.first = false;
+            }
+        }
+        w.raw((byte) '}');
+        return w;
+    }
+
+    private byte[] level(Level level) {
+        byte[] b = levels.get(level);
+        if (b == null) {
+            Writer w = new Writer();
+            w.string(level.name());
+            b = Arrays.copyOf(w.buffer, w.position);
+            levels.put(level, b);
+        }
+        return b;
+    }
+
+    private byte[] logger(String name) {
+        byte[] b = loggers.get(name);
+        if ((b == null) && (loggers.size() < MAX_LOGGERS)) {
+            Writer w = new Writer();
+            w.string(name);
+            b = Arrays.copyOf(w.buffer, w.position);
+            loggers.put(name, b);
+        }
+        return b;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static final class Writer {
+        public final StringBuilder builder = new StringBuilder(256);
+        public byte[] buffer = new byte[1024];
+        public int position;
+        public boolean first;
+
+        public Writer() {
+        }
+
+        public void raw(byte b) {
+            ensure(1);
+            buffer[position++] = b;
+        }
+
+        public void raw(byte[] b) {
+            ensure(b.length);
+            System.arraycopy(b, 0, buffer, position, b.length);
+            position += b.length;
+        }
+
+        public void name(byte[] name) {
+            if (first) {
+                first = false;
+            } else {
+                raw((byte) ',');
+            }
+            raw(name);
+        }
+
+        public void entry(String key, Object value) {
+            if (first) {
+                first = false;
+            } else {
+                raw((byte) ',');
+            }
+            string(key);
+            raw((byte) ':');
+            string((value instanceof CharSequence) ? (CharSequence) value : String.valueOf(value));
+        }
+
+        public void number(long value) {
+            ensure(20);
+            if (value < 0L) {
+                buffer[position++] = '-';
+            } else {
+                value = -value;
+            }
+            int start = position;
+            do {
+                buffer[position++] = (byte) ('0' - (value % 10L));
+                value /= 10L;
+            } while (value != 0L);
+            for (int i = start, j = position - 1; i < j; ++i, --j) {
+                byte b = buffer[i];
+                buffer[i] = buffer[j];
+                buffer[j] = b;
+            }
+        }
+
+        public void string(CharSequence s) {
+            int n = s.length();
+            ensure(n * 6 + 2);
+            byte[] b = buffer;
+            int p = position;
+            b[p++] = '"';
+            for (int i = 0; i < n; ++i) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    if ((c >= 0x20) && (c != '"') && (c != '\\')) {
+                        b[p++] = (byte) c;
+                    } else {
+                        b[p++] = '\\';
+                        switch (c) {
+                            case '"':
+                                b[p++] = '"';
+                                break;
+                            case '\\':
+                                b[p++] = '\\';
+                                break;
+                            case '\n':
+                                b[p++] = 'n';
+                                break;
+                            case '\r':
+                                b[p++] = 'r';
+                                break;
+                            case '\t':
+                                b[p++] = 't';
+                                break;
+                            case '\b':
+                                b[p++] = 'b';
+                                break;
+                            case '\f':
+                                b[p++] = 'f';
+                                break;
+                            default:
+                                b[p++] = 'u';
+                                b[p++] = '0';
+                                b[p++] = '0';
+                                b[p++] = HEX[c >> 4];
+                                b[p++] = HEX[c & 0xF];
+                        }
+                    }
+                } else if (c < 0x800) {
+                    b[p++] = (byte) (0xC0 | (c >> 6));
+                    b[p++] = (byte) (0x80 | (c & 0x3F));
+                } else if (!Character.isSurrogate(c)) {
+                    b[p++] = (byte) (0xE0 | (c >> 12));
+                    b[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    b[p++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && (i + 1 < n) && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    b[p++] = (byte) (0xF0 | (cp >> 18));
+                    b[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    b[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    b[p++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    b[p++] = '?';
+                }
+            }
+            b[p++] = '"';
+            position = p;
+        }
+
+        private void ensure(int n) {
+            if (position + n > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, position + n));
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.services.logs.model.PutLogEventsRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Request handler of the AWS client that gzip-encodes the body of PutLogEvents requests of at least
+ * {@link #MIN_SIZE} bytes and sets {@code Content-Encoding: gzip}. It runs before signing, so the signature covers
+ * the compressed body.
+ * <p>
+ * Compressors, each a {@link Deflater} with the input and output buffers it reuses, are pooled: one is taken for a
+ * request and returned when the response or error arrives, since retries resend its output buffer.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class Compression extends RequestHandler2 {
+    public static final int MIN_SIZE = 1024;
+
+    private static final HandlerContextKey<Compressor> COMPRESSOR =
+            new HandlerContextKey<>("pro.apphub.aws.cloudwatch.log4j2.Compressor");
+
+    private final int level;
+    private final ConcurrentLinkedQueue<Compressor> pool = new ConcurrentLinkedQueue<>();
+
+    public Compression(int level) {
+        this.level = level;
+    }
+
+    public static Compression parse(String compression) {
+        if ((compression == null) || compression.equalsIgnoreCase("none")) {
+            return null;
+        } else if (compression.equalsIgnoreCase("gzip")) {
+            return new Compression(Deflater.BEST_SPEED);
+        } else if (compression.toLowerCase().startsWith("gzip:")) {
+            return new Compression(Integer.parseInt(compression.substring(5).trim()));
+        } else {
+            throw new IllegalArgumentException(String.format("Compression '%s' is not valid", compression));
+        }
+    }
+
+    @Override
+    public void beforeRequest(Request<?> request) {
+        if ((request.getOriginalRequest() instanceof PutLogEventsRequest) && (request.getContent() != null)) {
+            Compressor c = acquire();
+            try {
+                int n = c.read(request.getContent());
+                if (n >= MIN_SIZE) {
+                    int l = c.compress(c.input, n);
+                    request.setContent(new ByteArrayInputStream(c.output, 0, l));
+                    request.addHeader("Content-Encoding", "gzip");
+                    request.addHeader("Content-Length", Integer.toString(l));
+                    request.addHandlerContext(COMPRESSOR, c);
+                    c = null;
+                } else {
+                    request.setContent(new ByteArrayInputStream(Arrays.copyOf(c.input, n)));
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                if (c != null) {
+                    release(c);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void afterResponse(Request<?> request, Response<?> response) {
+        release(request);
+    }
+
+    @Override
+    public void afterError(Request<?> request, Response<?> response, Exception e) {
+        release(request);
+    }
+
+    Compressor acquire() {
+        Compressor c = pool.poll();
+        return (c != null) ? c : new Compressor(level);
+    }
+
+    void release(Compressor compressor) {
+        pool.offer(compressor);
+    }
+
+    private void release(Request<?> request) {
+        Compressor c = request.getHandlerContext(COMPRESSOR);
+        if (c != null) {
+            request.addHandlerContext(COMPRESSOR, null);
+            release(c);
+        }
+    }
+
+    static final class Compressor {
+        private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+        private static final int TRAILER = 8;
+
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        private byte[] input = new byte[65536];
+        private byte[] output = new byte[16384];
+
+        public Compressor(int level) {
+            this.deflater = new Deflater(level, true);
+        }
+
+        public byte[] output() {
+            return output;
+        }
+
+        public int read(InputStream content) throws IOException {
+            int n = 0;
+            int r;
+            while ((r = content.read(input, n, input.length - n)) >= 0) {
+                n += r;
+                if (n == input.length) {
+                    input = Arrays.copyOf(input, input.length << 1);
+                }
+            }
+            return n;
+        }
+
+        public int compress(byte[] bytes, int count) {
+            deflater.reset();
+            crc.reset();
+            crc.update(bytes, 0, count);
+            deflater.setInput(bytes, 0, count);
+            deflater.finish();
+            System.arraycopy(HEADER, 0, output, 0, HEADER.length);
+            int p = HEADER.length;
+            while (!deflater.finished()) {
+                if (output.length - p < TRAILER + 64) {
+                    output = Arrays.copyOf(output, output.length << 1);
+                }
+                p += deflater.deflate(output, p, output.length - p - TRAILER);
+            }
+            int v = (int) crc.getValue();
+            for (int i = 0; i < 4; ++i) {
+                output[p++] = (byte) (v >>> (i * 8));
+            }
+            for (int i = 0; i < 4; ++i) {
+                output[p++] = (byte) (count >>> (i * 8));
+            }
+            return p;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.SimpleMessage;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Collapses events with the same logger, level and message template within {@code window} ms into the first event
+ * and one {@code [REPEATED n TIMES]} summary, emitted when the window of the template ends.
+ * <p>
+ * Templates are kept in a direct-mapped table of {@code size} slots, so a new template evicts the one in its slot.
+ * Every slot has a try-lock: an appending thread that finds its slot locked lets the event through instead of
+ * waiting. A sweep thread emits the summaries of windows that ended without another repeat.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+abstract class Dedup {
+    private final long window;
+    private final Metrics metrics;
+    private final int mask;
+    private final AtomicIntegerArray locks;
+    private final String[] loggers;
+    private final Level[] levels;
+    private final String[] formats;
+    private final long[] starts;
+    private final long[] lasts;
+    private final int[] counts;
+    private final Thread thread;
+
+    public Dedup(String name, long window, int size, Metrics metrics) {
+        int s = 1;
+        while (s < size) {
+            s <<= 1;
+        }
+        this.window = window;
+        this.metrics = metrics;
+        this.mask = s - 1;
+        this.locks = new AtomicIntegerArray(s);
+        this.loggers = new String[s];
+        this.levels = new Level[s];
+        this.formats = new String[s];
+        this.starts = new long[s];
+        this.lasts = new long[s];
+        this.counts = new int[s];
+        this.thread = new Thread(String.format("aws-cloudwatch-log4j2-dedup-%s", name)) {
+            @Override
+            public void run() {
+                while (!isInterrupted()) {
+                    try {
+                        Thread.sleep(Dedup.this.window);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                    sweep(System.currentTimeMillis());
+                }
+            }
+        };
+        this.thread.setDaemon(true);
+    }
+
+    public int size() {
+        return mask + 1;
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void stop() {
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+        }
+        sweep(Long.MAX_VALUE);
+    }
+
+    public boolean accept(LogEvent event) {
+        Message m = event.getMessage();
+        String format = (m != null) ? m.getFormat() : null;
+        String logger = event.getLoggerName();
+        Level level = event.getLevel();
+        if ((format == null) || (logger == null) || (level == null)) {
+            return true;
+        }
+        int h = (format.hashCode() * 31 + logger.hashCode()) * 31 + level.hashCode();
+        int i = (h ^ (h >>> 16)) & mask;
+        if (!locks.compareAndSet(i, 0, 1)) {
+            return true;
+        }
+        LogEvent summary = null;
+        try {
+            long time = event.getTimeMillis();
+            if ((formats[i] != null) && (time - starts[i] < window) && (levels[i] == level)
+                    && format.equals(formats[i]) && logger.equals(loggers[i])) {
+                ++counts[i];
+                lasts[i] = Math.max(lasts[i], time);
+                metrics.repeat();
+                return false;
+            }
+            summary = take(i);
+            loggers[i] = logger;
+            levels[i] = level;
+            formats[i] = format;
+            starts[i] = time;
+            lasts[i] = time;
+        } finally {
+            locks.set(i, 0);
+            if (summary != null) {
+                emit(summary);
+            }
+        }
+        return true;
+    }
+
+    public void sweep(long time) {
+        for (int i = 0; i <= mask; ++i) {
+            if ((counts[i] > 0) && (time - starts[i] >= window) && locks.compareAndSet(i, 0, 1)) {
+                LogEvent summary = null;
+                try {
+                    if (time - starts[i] >= window) {
+                        summary = take(i);
+                        formats[i] = null;
+                    }
+                } finally {
+                    locks.set(i, 0);
+                    if (summary != null) {
+                        emit(summary);
+                    }
+                }
+            }
+        }
+    }
+
+    protected abstract void emit(LogEvent summary);
+
+    private LogEvent take(int i) {
+        int c = counts[i];
+        if (c > 0) {
+            counts[i] = 0;
+            return Log4jLogEvent.newBuilder()
+                                .setLoggerName(loggers[i])
+                                .setLevel(levels[i])
+                                .setTimeMillis(lasts[i])
+                                .setMessage(new SimpleMessage(String.format("[REPEATED %d TIMES]: %s", c, formats[i])))
+                                .build();
+        } else {
+            return null;
+        }
+    }
+}
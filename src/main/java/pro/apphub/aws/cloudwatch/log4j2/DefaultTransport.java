@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.logs.AWSLogs;
+import com.amazonaws.services.logs.AWSLogsClientBuilder;
+
+/**
+ * Builds a client of the CloudWatch Logs service with static credentials, if they are given, or the default
+ * credentials provider chain.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class DefaultTransport implements Transport {
+    private final Compression compression;
+
+    public DefaultTransport() {
+        this(null);
+    }
+
+    public DefaultTransport(Compression compression) {
+        this.compression = compression;
+    }
+
+    @Override
+    public AWSLogs create(String region, String access, String secret) {
+        AWSLogsClientBuilder builder;
+        if ((access != null) && (secret != null)) {
+            BasicAWSCredentials credentials = new BasicAWSCredentials(access, secret);
+            builder = AWSLogsClientBuilder.standard().withCredentials(new AWSStaticCredentialsProvider(credentials));
+        } else {
+            builder = AWSLogsClientBuilder.standard();
+        }
+        builder.withClientConfiguration(new ClientConfiguration()
+                .withTcpKeepAlive(true)
+                .withMaxConnections(Integer.getInteger("aws.cloudwatch.max.connections",
+                                                       ClientConfiguration.DEFAULT_MAX_CONNECTIONS)));
+        if (region != null) {
+            builder.withRegion(Regions.fromName(region));
+        }
+        if (compression != null) {
+            builder.withRequestHandlers(compression);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.model.InputLogEvent;
+import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.EventFactory;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.InsufficientCapacityException;
+import com.lmax.disruptor.LifecycleAware;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.TimeoutBlockingWaitStrategy;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Disruptor ring buffer of preallocated events that replaces the double buffer of a shard when {@code queue} is
+ * {@code disruptor}. A single handler thread appends events to the current batch and holds it until the interval of
+ * the {@link FlushSchedule} has elapsed since the last flush, or the batch is full. A held batch is checked at every
+ * end of a Disruptor batch; while the stream is idle the shared {@link FlushExecutor} publishes a tick into the ring
+ * when it is due, so it is sent with every wait strategy. Like the double buffer, it is not flushed while the sender
+ * is backlogged: the handler keeps the batch and takes the next one with {@link Sender#acquire}, so the ring fills up
+ * and the overflow policy applies.
+ * <p>
+ * The wait strategy of the handler uses the names of Log4j2's {@code AsyncLogger.WaitStrategy}: {@code Block},
+ * {@code Timeout} (default), {@code Sleep}, {@code Yield} and {@code Busyspin}.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class DisruptorQueue {
+    public static final String DEFAULT_WAIT_STRATEGY = "Timeout";
+
+    private static final int TICK = -1;
+
+    private static final EventFactory<Event> FACTORY = new EventFactory<Event>() {
+        @Override
+        public Event newInstance() {
+            return new Event();
+        }
+    };
+
+    private final RingBuffer<Event> ringBuffer;
+    private final Handler handler;
+    private final BatchEventProcessor<Event> processor;
+    private final Thread thread;
+
+    public DisruptorQueue(String name,
+                          int capacity,
+                          String waitStrategy,
+                          Sender sender,
+                          FlushSchedule schedule,
+                          OverflowRing ring,
+                          Metrics metrics) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.ringBuffer = RingBuffer.createMultiProducer(FACTORY, size, createWaitStrategy(waitStrategy));
+        this.handler = new Handler(sender, schedule, ring, metrics);
+        this.processor = new BatchEventProcessor<>(ringBuffer, ringBuffer.newBarrier(), handler);
+        ringBuffer.addGatingSequences(processor.getSequence());
+        this.thread = Threads.create(String.format("aws-cloudwatch-log4j2-flush-%s", name), false, processor);
+    }
+
+    public int size() {
+        return (int) (ringBuffer.getBufferSize() - ringBuffer.remainingCapacity());
+    }
+
+    public int capacity() {
+        return ringBuffer.getBufferSize();
+    }
+
+    public boolean append(long timestamp, byte[] message, int length) {
+        long sequence;
+        try {
+            sequence = ringBuffer.tryNext();
+        } catch (InsufficientCapacityException e) {
+            return false;
+        }
+        try {
+            ringBuffer.get(sequence).set(timestamp, message, length);
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+        return true;
+    }
+
+    public long due() {
+        return handler.due.get();
+    }
+
+    public void tick() {
+        long d = handler.due.get();
+        if ((d != Long.MAX_VALUE) && handler.due.compareAndSet(d, Long.MAX_VALUE)) {
+            long sequence;
+            try {
+                sequence = ringBuffer.tryNext();
+            } catch (InsufficientCapacityException e) {
+                return;
+            }
+            try {
+                ringBuffer.get(sequence).length = TICK;
+            } finally {
+                ringBuffer.publish(sequence);
+            }
+        }
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void stop() {
+        while (processor.isRunning() && (processor.getSequence().get() < ringBuffer.getCursor())) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1L));
+        }
+        processor.halt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+        }
+    }
+
+    public static WaitStrategy createWaitStrategy(String name) {
+        switch ((name != null) ? name.trim().toUpperCase() : DEFAULT_WAIT_STRATEGY.toUpperCase()) {
+            case "BLOCK":
+                return new BlockingWaitStrategy();
+            case "TIMEOUT":
+                return new TimeoutBlockingWaitStrategy(10L, TimeUnit.MILLISECONDS);
+            case "SLEEP":
+                return new SleepingWaitStrategy();
+            case "YIELD":
+                return new YieldingWaitStrategy();
+            case "BUSYSPIN":
+                return new BusySpinWaitStrategy();
+            default:
+                throw new IllegalArgumentException(String.format("Wait strategy '%s' is not valid", name));
+        }
+    }
+
+    private static final class Handler implements EventHandler<Event>, LifecycleAware {
+        public final AtomicLong due = new AtomicLong(Long.MAX_VALUE);
+
+        private final Sender sender;
+        private final FlushSchedule schedule;
+        private final OverflowRing ring;
+        private final Metrics metrics;
+        private Batch batch;
+        private int count;
+        private int size;
+        private int events;
+        private long bytes;
+        private long last;
+        private long time;
+        private long flushed = System.currentTimeMillis();
+
+        public Handler(Sender sender, FlushSchedule schedule, OverflowRing ring, Metrics metrics) {
+            this.sender = sender;
+            this.schedule = schedule;
+            this.ring = ring;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void onEvent(Event event, long sequence, boolean endOfBatch) {
+            if (event.length != TICK) {
+                add(event.timestamp, event.getMessage(), event.size);
+            }
+            if (endOfBatch) {
+                long interval = schedule.getInterval();
+                if ((System.currentTimeMillis() - flushed >= interval) && !sender.isBacklogged()) {
+                    flush();
+                } else if (batch != null) {
+                    due.compareAndSet(Long.MAX_VALUE, flushed + interval);
+                }
+            }
+        }
+
+        @Override
+        public void onStart() {
+        }
+
+        @Override
+        public void onShutdown() {
+            flush();
+        }
+
+        private void add(long timestamp, String message, int size) {
+            if (batch == null) {
+                batch = sender.acquire();
+                time = System.nanoTime();
+            } else if ((count == Buffer.MAX_BATCH_COUNT) || (this.size + size > Buffer.MAX_BATCH_SIZE)) {
+                batch.bytes = this.size;
+                sender.send(batch);
+                batch = sender.acquire();
+                count = 0;
+                this.size = 0;
+            }
+            last = Math.max(last, timestamp);
+            batch.add(new InputLogEvent().withTimestamp(last).withMessage(message));
+            ++count;
+            this.size += size;
+            ++events;
+            bytes += size;
+        }
+
+        private void flush() {
+            long l = metrics.takeLost();
+            if (l > 0L) {
+                String m = String.format("[EVENTS_LOST]: %d", l);
+                add(System.currentTimeMillis(), m, m.getBytes(StandardCharsets.UTF_8).length + Event.OVERHEAD);
+            }
+            if (ring != null) {
+                Event e;
+                while ((e = ring.poll()) != null) {
+                    add(e.timestamp, e.getMessage(), e.size);
+                }
+            }
+            if (batch != null) {
+                batch.bytes = size;
+                sender.send(batch);
+                batch = null;
+                count = 0;
+                size = 0;
+                metrics.flush(System.nanoTime() - time);
+                long now = System.currentTimeMillis();
+                schedule.update(events, bytes, now - flushed);
+                flushed = now;
+                events = 0;
+                bytes = 0L;
+            }
+            due.set(Long.MAX_VALUE);
+        }
+    }
+}
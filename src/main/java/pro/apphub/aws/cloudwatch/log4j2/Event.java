@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Buffered log event with its UTF-8 encoded message and the size it takes in a PutLogEvents batch.
+ * <p>
+ * Buffer slots are events that are allocated once and overwritten by {@link #set}, which copies the message into
+ * an array that only grows, so appending into a slot allocates nothing once the array is large enough.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class Event {
+    public static final int OVERHEAD = 26;
+
+    public long timestamp;
+    public byte[] message;
+    public int length;
+    public int size;
+
+    public Event() {
+        this.message = new byte[0];
+    }
+
+    public Event(long timestamp, byte[] message) {
+        this.timestamp = timestamp;
+        this.message = message;
+        this.length = message.length;
+        this.size = message.length + OVERHEAD;
+    }
+
+    public Event(long timestamp, String message) {
+        this(timestamp, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void set(long timestamp, byte[] message, int length) {
+        if (this.message.length < length) {
+            this.message = new byte[length];
+        }
+        System.arraycopy(message, 0, this.message, 0, length);
+        this.timestamp = timestamp;
+        this.length = length;
+        this.size = length + OVERHEAD;
+    }
+
+    public String getMessage() {
+        return new String(message, 0, length, StandardCharsets.UTF_8);
+    }
+
+    public static int size(String message) {
+        int n = message.length();
+        int s = n;
+        for (int i = 0; i < n; ++i) {
+            char c = message.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    s += 1;
+                } else if (!Character.isSurrogate(c)) {
+                    s += 2;
+                } else if (Character.isHighSurrogate(c) && (i + 1 < n)
+                        && Character.isLowSurrogate(message.charAt(i + 1))) {
+                    s += 2;
+                    ++i;
+                }
+            }
+        }
+        return s + OVERHEAD;
+    }
+}
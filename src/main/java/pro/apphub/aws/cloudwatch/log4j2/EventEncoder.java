@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.StringLayout;
+import org.apache.logging.log4j.core.layout.ByteBufferDestination;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reusable destination that collects the UTF-8 encoded bytes of one event, truncated to at most {@code length} bytes.
+ * {@link #write} leaves the bytes in {@link #array} without copying them.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class EventEncoder implements ByteBufferDestination {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final Charset UTF_8 = StandardCharsets.UTF_8;
+
+    private final int length;
+    private final ByteBuffer discard = ByteBuffer.allocate(256);
+    private ByteBuffer buffer;
+    private ByteBuffer current;
+    private boolean truncated;
+
+    public EventEncoder(int length) {
+        this.length = length;
+        this.buffer = ByteBuffer.allocate(Math.min(length, INITIAL_CAPACITY));
+        this.current = buffer;
+    }
+
+    public byte[] encode(Layout<?> layout, LogEvent event) {
+        int n = write(layout, event);
+        return Arrays.copyOf(buffer.array(), n);
+    }
+
+    public int write(Layout<?> layout, LogEvent event) {
+        buffer.clear();
+        current = buffer;
+        truncated = false;
+        if ((layout instanceof StringLayout) && !UTF_8.equals(((StringLayout) layout).getCharset())) {
+            byte[] b = ((StringLayout) layout).toSerializable(event).getBytes(UTF_8);
+            writeBytes(b, 0, b.length);
+        } else {
+            layout.encode(event, this);
+        }
+        byte[] b = buffer.array();
+        int end = buffer.position();
+        if (truncated && (end > 0)) {
+            int i = end - 1;
+            while ((i > 0) && ((b[i] & 0xC0) == 0x80)) {
+                --i;
+            }
+            int lead = b[i] & 0xFF;
+            int need = (lead < 0xC0) ? 1 : ((lead < 0xE0) ? 2 : ((lead < 0xF0) ? 3 : 4));
+            if (i + need > end) {
+                end = i;
+            }
+        }
+        return end;
+    }
+
+    public byte[] array() {
+        return buffer.array();
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer() {
+        return current;
+    }
+
+    @Override
+    public ByteBuffer drain(ByteBuffer buf) {
+        if ((buf == buffer) && !truncated && grow(1)) {
+            return buffer;
+        } else {
+            if (buf == buffer) {
+                truncated = true;
+            }
+            discard.clear();
+            current = discard;
+            return discard;
+        }
+    }
+
+    @Override
+    public void writeBytes(ByteBuffer data) {
+        int n = data.remaining();
+        if (!truncated && ((n <= buffer.remaining()) || grow(n))) {
+            buffer.put(data);
+        } else {
+            int r = truncated ? 0 : buffer.remaining();
+            if (r > 0) {
+                int limit = data.limit();
+                data.limit(data.position() + r);
+                buffer.put(data);
+                data.limit(limit);
+            }
+            data.position(data.limit());
+            truncated = true;
+        }
+    }
+
+    @Override
+    public void writeBytes(byte[] data, int offset, int length) {
+        if (!truncated && ((length <= buffer.remaining()) || grow(length))) {
+            buffer.put(data, offset, length);
+        } else {
+            int r = truncated ? 0 : buffer.remaining();
+            if (r > 0) {
+                buffer.put(data, offset, r);
+            }
+            truncated = true;
+        }
+    }
+
+    private boolean grow(int n) {
+        int c = buffer.capacity();
+        if (c < length) {
+            int nc = Math.min(Math.max(c << 1, buffer.position() + n), length);
+            buffer = ByteBuffer.wrap(Arrays.copyOf(buffer.array(), nc), buffer.position(), nc - buffer.position());
+            current = buffer;
+        }
+        return buffer.remaining() >= n;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Process-wide pool of flush threads shared by the buffered shards of all appenders. It is started by the first
+ * shard and stopped with the last one; the number of threads is set by the {@code aws.cloudwatch.flush.threads}
+ * system property (default half of the processors, from 1 to 4).
+ * <p>
+ * A free thread flushes one buffer of the shard with the earliest due time, so a busy appender, whose due time
+ * moves forward with every flush, cannot hold back the others. A shard is flushed by one thread at a time. A flush
+ * hands its batches to the sender of the shard without waiting for requests, and a shard whose sender is backlogged
+ * is checked again every {@link #POLL} ms, so a slow or throttled stream never parks a shared thread.
+ * The threads are virtual on JDK 21+ when enabled, see {@link Threads}.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class FlushExecutor {
+    public static final int DEFAULT_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    public static final long POLL = 100L;
+
+    private static final ReentrantLock GLOBAL = new ReentrantLock();
+    private static FlushExecutor instance;
+    private static int references;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition condition = lock.newCondition();
+    private final ArrayList<Task> tasks = new ArrayList<>();
+    private final Thread[] threads;
+    private boolean running = true;
+
+    public FlushExecutor(int threads) {
+        this.threads = new Thread[threads];
+        for (int i = 0; i < threads; ++i) {
+            this.threads[i] = Threads.create(String.format("aws-cloudwatch-log4j2-flush-%d", i), false, new Runnable() {
+                @Override
+                public void run() {
+                    work();
+                }
+            });
+        }
+    }
+
+    public static FlushExecutor acquire() {
+        GLOBAL.lock();
+        try {
+            if (instance == null) {
+                instance = new FlushExecutor(Integer.getInteger("aws.cloudwatch.flush.threads", DEFAULT_THREADS));
+                instance.start();
+            }
+            ++references;
+            return instance;
+        } finally {
+            GLOBAL.unlock();
+        }
+    }
+
+    public static void release(FlushExecutor executor) {
+        GLOBAL.lock();
+        try {
+            if ((executor == instance) && (--references == 0)) {
+                instance = null;
+                executor.stop();
+            }
+        } finally {
+            GLOBAL.unlock();
+        }
+    }
+
+    public int threads() {
+        return threads.length;
+    }
+
+    public void start() {
+        for (Thread t : threads) {
+            t.start();
+        }
+    }
+
+    public void stop() {
+        lock.lock();
+        try {
+            running = false;
+            condition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+            }
+        }
+    }
+
+    public void register(Shard shard) {
+        lock.lock();
+        try {
+            tasks.add(new Task(shard));
+            condition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void unregister(Shard shard) {
+        lock.lock();
+        try {
+            for (int i = 0; i < tasks.size(); ++i) {
+                Task t = tasks.get(i);
+                if (t.shard == shard) {
+                    tasks.remove(i);
+                    while (t.busy) {
+                        condition.awaitUninterruptibly();
+                    }
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void signal() {
+        lock.lock();
+        try {
+            condition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        lock.lock();
+        try {
+            while (running) {
+                long time = System.currentTimeMillis();
+                Task next = null;
+                long due = time + POLL;
+                for (Task t : tasks) {
+                    if (!t.busy) {
+                        long d = t.shard.due();
+                        if ((d < due) || ((d == due) && (next != null) && (t.flushed < next.flushed))) {
+                            next = t;
+                            due = d;
+                        }
+                    }
+                }
+                if ((next != null) && (due <= time)) {
+                    next.busy = true;
+                    lock.unlock();
+                    try {
+                        next.shard.flushNext();
+                    } catch (Throwable e) {
+                    } finally {
+                        lock.lock();
+                        next.busy = false;
+                        next.flushed = System.nanoTime();
+                        condition.signalAll();
+                    }
+                } else {
+                    try {
+                        condition.await(Math.max(due - time, 1L), TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Task {
+        public final Shard shard;
+        public boolean busy;
+        public long flushed;
+
+        public Task(Shard shard) {
+            this.shard = shard;
+        }
+    }
+}
@@ -22,11 +22,19 @@ package pro.apphub.aws.cloudwatch.log4j2;
  * @since 1.0
  */
 final class FlushInfo {
+    public final long first;
     public final long last;
-    public final String token;
+    public final int events;
+    public final long bytes;
 
-    public FlushInfo(long last, String token) {
+    public FlushInfo(long last) {
+        this(last, last, 0, 0L);
+    }
+
+    public FlushInfo(long first, long last, int events, long bytes) {
+        this.first = first;
         this.last = last;
-        this.token = token;
+        this.events = events;
+        this.bytes = bytes;
     }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+/**
+ * Chooses the interval between flushes of one shard from the event and byte rates seen by previous flushes, so that
+ * a flush fills a PutLogEvents batch, within {@code [minInterval, maxInterval]}. Without {@code adaptive} the interval
+ * is always {@code maxInterval}. Rates are exponentially weighted moving averages per second.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class FlushSchedule {
+    private static final double ALPHA = 0.3;
+
+    private final long minInterval;
+    private final long maxInterval;
+    private final boolean adaptive;
+    private final int capacity;
+    private volatile long interval;
+    private volatile double eventRate;
+    private volatile double byteRate;
+
+    public FlushSchedule(long minInterval, long maxInterval, boolean adaptive, int capacity) {
+        this.minInterval = Math.min(minInterval, maxInterval);
+        this.maxInterval = maxInterval;
+        this.adaptive = adaptive;
+        this.capacity = capacity;
+        this.interval = maxInterval;
+    }
+
+    public long getMinInterval() {
+        return minInterval;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public double getEventRate() {
+        return eventRate;
+    }
+
+    public double getByteRate() {
+        return byteRate;
+    }
+
+    public long update(int events, long bytes, long elapsed) {
+        if (adaptive && (elapsed > 0L)) {
+            double er = events * 1000.0 / elapsed;
+            double br = bytes * 1000.0 / elapsed;
+            eventRate = (eventRate > 0.0) ? ALPHA * er + (1.0 - ALPHA) * eventRate : er;
+            byteRate = (byteRate > 0.0) ? ALPHA * br + (1.0 - ALPHA) * byteRate : br;
+            if (eventRate > 0.0) {
+                double target = Math.min(Math.min(Buffer.MAX_BATCH_COUNT, capacity),
+                                         Buffer.MAX_BATCH_SIZE * eventRate / byteRate);
+                interval = Math.max(minInterval, Math.min(maxInterval, (long) (target * 1000.0 / eventRate)));
+            } else {
+                interval = maxInterval;
+            }
+        }
+        return interval;
+    }
+}
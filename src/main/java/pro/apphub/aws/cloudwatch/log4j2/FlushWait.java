@@ -17,8 +17,8 @@
 
 package pro.apphub.aws.cloudwatch.log4j2;
 
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -28,49 +28,87 @@ import java.util.concurrent.locks.ReentrantLock;
  */
 final class FlushWait {
     private final ReentrantLock lock = new ReentrantLock();
-    private final Condition condition = lock.newCondition();
-    private final long span;
+    private final Condition space = lock.newCondition();
+    private final AtomicInteger waiters = new AtomicInteger(0);
+    private final FlushSchedule schedule;
+    private volatile FlushExecutor executor;
     private long prev = System.currentTimeMillis();
 
     public FlushWait(int span) {
-        this.span = span * 1000L;
+        this(new FlushSchedule(0L, span * 1000L, false, Integer.MAX_VALUE));
     }
 
-    public void await(AtomicBoolean enabled, Buffer buffer1, Buffer buffer2) {
-        long next = prev + span;
-        long time = System.currentTimeMillis();
-        if (time < next) {
-            lock.lock();
-            try {
-                if (enabled.get() && buffer1.isReady() && buffer2.isReady()) {
-                    try {
-                        condition.await(next - time, TimeUnit.MILLISECONDS);
-                    } catch (InterruptedException e) {
-                    }
-                }
-            } finally {
-                lock.unlock();
-            }
+    public FlushWait(FlushSchedule schedule) {
+        this.schedule = schedule;
+    }
+
+    public FlushSchedule getSchedule() {
+        return schedule;
+    }
+
+    public void attach(FlushExecutor executor) {
+        this.executor = executor;
+    }
+
+    public long due(Buffer buffer1, Buffer buffer2) {
+        boolean ready1 = buffer1.isReady();
+        boolean ready2 = buffer2.isReady();
+        if (ready1 && ready2) {
+            return prev + schedule.getInterval();
+        } else if (ready1 || ready2) {
+            return prev + schedule.getMinInterval();
+        } else {
+            return prev;
         }
+    }
+
+    public void mark() {
         prev = System.currentTimeMillis();
     }
 
     public void signalAll() {
         lock.lock();
         try {
-            condition.signalAll();
+            space.signalAll();
         } finally {
             lock.unlock();
         }
+        signalExecutor();
     }
 
-    public void signalAll(Runnable activity) {
+    public void awaitSpace(AtomicBoolean enabled, Buffer buffer1, Buffer buffer2, long nanos) {
         lock.lock();
         try {
-            activity.run();
-            condition.signalAll();
+            waiters.incrementAndGet();
+            try {
+                while (enabled.get() && !buffer1.isReady() && !buffer2.isReady() && (nanos > 0L)) {
+                    signalExecutor();
+                    nanos = space.awaitNanos(nanos);
+                }
+            } finally {
+                waiters.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
         } finally {
             lock.unlock();
         }
     }
+
+    public void signalSpace() {
+        if (waiters.get() > 0) {
+            lock.lock();
+            try {
+                space.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void signalExecutor() {
+        FlushExecutor e = executor;
+        if (e != null) {
+            e.signal();
+        }
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of non-negative values with eight sub-buckets per power of two, so percentiles are
+ * reported within 12.5% of the recorded values.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class Histogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS) * SUB_COUNT);
+
+    public Histogram() {
+    }
+
+    public void record(long value) {
+        counts.incrementAndGet(index(Math.max(value, 0L)));
+    }
+
+    public long getCount() {
+        long c = 0L;
+        for (int i = 0; i < counts.length(); ++i) {
+            c += counts.get(i);
+        }
+        return c;
+    }
+
+    public long percentile(double p) {
+        long[] s = new long[counts.length()];
+        long total = 0L;
+        for (int i = 0; i < s.length; ++i) {
+            s[i] = counts.get(i);
+            total += s[i];
+        }
+        if (total > 0L) {
+            long rank = Math.max(1L, (long) Math.ceil(total * p / 100.0));
+            long c = 0L;
+            for (int i = 0; i < s.length; ++i) {
+                c += s[i];
+                if (c >= rank) {
+                    return upper(i);
+                }
+            }
+        }
+        return 0L;
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); ++i) {
+            counts.set(i, 0L);
+        }
+    }
+
+    static int index(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        } else {
+            int e = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) ((value >>> (e - SUB_BITS)) & (SUB_COUNT - 1));
+            return (e - SUB_BITS + 1) * SUB_COUNT + sub;
+        }
+    }
+
+    static long upper(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        } else {
+            int e = index / SUB_COUNT + SUB_BITS - 1;
+            long sub = index % SUB_COUNT;
+            return ((SUB_COUNT + sub + 1) << (e - SUB_BITS)) - 1L;
+        }
+    }
+}
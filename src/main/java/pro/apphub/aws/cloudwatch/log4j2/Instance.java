@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Identity of this host, looked up once per process and shared by all appenders: the EC2 instance id from the
+ * instance metadata service (IMDSv2, falling back to IMDSv1), or the host name off EC2. Both requests use the
+ * timeout from {@code aws.cloudwatch.metadata.timeout} (ms, default 1000).
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class Instance {
+    private static final String METADATA = "http://169.254.169.254/latest";
+
+    private static volatile String id;
+
+    private Instance() {
+    }
+
+    public static String get() {
+        String i = id;
+        if (i == null) {
+            synchronized (Instance.class) {
+                i = id;
+                if (i == null) {
+                    i = retrieve(Integer.getInteger("aws.cloudwatch.metadata.timeout", 1000));
+                    id = i;
+                }
+            }
+        }
+        return i;
+    }
+
+    private static String retrieve(int timeout) {
+        try {
+            String token = null;
+            HttpURLConnection conn = open(String.format("%s/api/token", METADATA), timeout);
+            conn.setRequestMethod("PUT");
+            conn.setRequestProperty("X-aws-ec2-metadata-token-ttl-seconds", "21600");
+            if (conn.getResponseCode() == HttpURLConnection.HTTP_OK) {
+                token = read(conn);
+            } else {
+                conn.disconnect();
+            }
+            conn = open(String.format("%s/meta-data/instance-id", METADATA), timeout);
+            if (token != null) {
+                conn.setRequestProperty("X-aws-ec2-metadata-token", token);
+            }
+            if (conn.getResponseCode() == HttpURLConnection.HTTP_OK) {
+                String instance = read(conn);
+                if (instance != null) {
+                    return instance;
+                }
+            }
+            throw new IOException("Instance is null");
+        } catch (IOException e) {
+            try {
+                return InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e1) {
+                throw new RuntimeException(e1);
+            }
+        }
+    }
+
+    private static HttpURLConnection open(String url, int timeout) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(timeout);
+        conn.setReadTimeout(timeout);
+        conn.setUseCaches(false);
+        return conn;
+    }
+
+    private static String read(HttpURLConnection conn) throws IOException {
+        try (InputStream in = conn.getInputStream()) {
+            return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)).readLine();
+        } finally {
+            conn.disconnect();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Double buffer of a shard: events are appended to one buffer while the other one is flushed, and the flush
+ * alternates between them. A shard has a normal lane and, when a share of its capacity is reserved for priority
+ * levels, a priority lane that is flushed first.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class Lane {
+    private final AtomicBoolean flag = new AtomicBoolean(true);
+    private final Buffer buffer1;
+    private final Buffer buffer2;
+    private FlushInfo flushInfo = new FlushInfo(0L);
+    private Buffer flushed;
+
+    public Lane(int capacity) {
+        this.buffer1 = new Buffer(capacity);
+        this.buffer2 = new Buffer(capacity);
+    }
+
+    public int size() {
+        return buffer1.size() + buffer2.size();
+    }
+
+    public int capacity() {
+        return buffer1.capacity() + buffer2.capacity();
+    }
+
+    public long due(FlushWait flushWait) {
+        return flushWait.due(buffer1, buffer2);
+    }
+
+    public void awaitSpace(FlushWait flushWait, AtomicBoolean enabled, long nanos) {
+        flushWait.awaitSpace(enabled, buffer1, buffer2, nanos);
+    }
+
+    public boolean append(long timestamp, byte[] message, int length, FlushWait flushWait) {
+        if (flag.get()) {
+            return buffer1.append(timestamp, message, length, flushWait)
+                    || buffer2.append(timestamp, message, length, flushWait);
+        } else {
+            return buffer2.append(timestamp, message, length, flushWait)
+                    || buffer1.append(timestamp, message, length, flushWait);
+        }
+    }
+
+    public FlushInfo flush(Sender sender, Metrics metrics) {
+        Buffer b;
+        if (flushed == buffer1) {
+            flag.set(true);
+            b = buffer2;
+        } else {
+            flag.set(false);
+            b = buffer1;
+        }
+        flushInfo = b.flush(sender, flushInfo, metrics);
+        flushed = b;
+        return flushInfo;
+    }
+
+    public void refill(OverflowRing ring, FlushWait flushWait, Metrics metrics) {
+        Event e;
+        while ((e = ring.poll()) != null) {
+            if (!flushed.append(e, flushWait)) {
+                if (ring.addFirst(e) != null) {
+                    metrics.dropOldest();
+                }
+                break;
+            }
+        }
+    }
+}
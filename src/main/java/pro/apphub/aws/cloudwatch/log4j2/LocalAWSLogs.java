@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.AbstractAWSLogs;
+import com.amazonaws.services.logs.model.AWSLogsException;
+import com.amazonaws.services.logs.model.CreateLogGroupRequest;
+import com.amazonaws.services.logs.model.CreateLogGroupResult;
+import com.amazonaws.services.logs.model.CreateLogStreamRequest;
+import com.amazonaws.services.logs.model.CreateLogStreamResult;
+import com.amazonaws.services.logs.model.DataAlreadyAcceptedException;
+import com.amazonaws.services.logs.model.DescribeLogGroupsRequest;
+import com.amazonaws.services.logs.model.DescribeLogGroupsResult;
+import com.amazonaws.services.logs.model.DescribeLogStreamsRequest;
+import com.amazonaws.services.logs.model.DescribeLogStreamsResult;
+import com.amazonaws.services.logs.model.InputLogEvent;
+import com.amazonaws.services.logs.model.InvalidParameterException;
+import com.amazonaws.services.logs.model.InvalidSequenceTokenException;
+import com.amazonaws.services.logs.model.LogGroup;
+import com.amazonaws.services.logs.model.LogStream;
+import com.amazonaws.services.logs.model.PutLogEventsRequest;
+import com.amazonaws.services.logs.model.PutLogEventsResult;
+import com.amazonaws.services.logs.model.ResourceAlreadyExistsException;
+import com.amazonaws.services.logs.model.ResourceNotFoundException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-memory CloudWatch Logs that follows the service semantics used by the appender: log groups and streams,
+ * sequence tokens, the batch limits of PutLogEvents and a per-stream request rate, with a fixed latency per call.
+ * Every stream keeps up to {@code retention} of the latest events. The PutLogEvents requests of a group can be held,
+ * as a stalled endpoint would hold them, until the group is released.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public final class LocalAWSLogs extends AbstractAWSLogs {
+    public static final int MAX_EVENT_SIZE = 262144;
+
+    private final long latency;
+    private final double rate;
+    private final int retention;
+    private final ConcurrentSkipListMap<String, Group> groups = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, CountDownLatch> holds = new ConcurrentHashMap<>();
+
+    public LocalAWSLogs(long latency, double rate, int retention) {
+        this.latency = TimeUnit.MILLISECONDS.toNanos(latency);
+        this.rate = rate;
+        this.retention = retention;
+    }
+
+    public List<InputLogEvent> getEvents(String group, String stream) {
+        Stream s = stream(group, stream);
+        synchronized (s) {
+            return new ArrayList<>(s.events);
+        }
+    }
+
+    public long getEventCount(String group, String stream) {
+        Stream s = stream(group, stream);
+        synchronized (s) {
+            return s.count;
+        }
+    }
+
+    public long getThrottledCount(String group, String stream) {
+        Stream s = stream(group, stream);
+        synchronized (s) {
+            return s.throttled;
+        }
+    }
+
+    public void hold(String group) {
+        holds.putIfAbsent(group, new CountDownLatch(1));
+    }
+
+    public void release(String group) {
+        CountDownLatch l = holds.remove(group);
+        if (l != null) {
+            l.countDown();
+        }
+    }
+
+    @Override
+    public CreateLogGroupResult createLogGroup(CreateLogGroupRequest request) {
+        delay();
+        if (groups.putIfAbsent(request.getLogGroupName(), new Group()) != null) {
+            throw new ResourceAlreadyExistsException("The specified log group already exists");
+        }
+        return new CreateLogGroupResult();
+    }
+
+    @Override
+    public DescribeLogGroupsResult describeLogGroups(DescribeLogGroupsRequest request) {
+        delay();
+        String prefix = (request.getLogGroupNamePrefix() != null) ? request.getLogGroupNamePrefix() : "";
+        List<LogGroup> lgs = new ArrayList<>();
+        for (Map.Entry<String, Group> e : groups.tailMap(prefix).entrySet()) {
+            if (!e.getKey().startsWith(prefix)) {
+                break;
+            }
+            lgs.add(new LogGroup().withLogGroupName(e.getKey()).withCreationTime(e.getValue().created));
+        }
+        return new DescribeLogGroupsResult().withLogGroups(lgs);
+    }
+
+    @Override
+    public CreateLogStreamResult createLogStream(CreateLogStreamRequest request) {
+        delay();
+        if (group(request.getLogGroupName()).streams.putIfAbsent(request.getLogStreamName(),
+                                                                  new Stream(rate)) != null) {
+            throw new ResourceAlreadyExistsException("The specified log stream already exists");
+        }
+        return new CreateLogStreamResult();
+    }
+
+    @Override
+    public DescribeLogStreamsResult describeLogStreams(DescribeLogStreamsRequest request) {
+        delay();
+        Group g = group(request.getLogGroupName());
+        String prefix = (request.getLogStreamNamePrefix() != null) ? request.getLogStreamNamePrefix() : "";
+        List<LogStream> lss = new ArrayList<>();
+        for (Map.Entry<String, Stream> e : g.streams.tailMap(prefix).entrySet()) {
+            if (!e.getKey().startsWith(prefix)) {
+                break;
+            }
+            Stream s = e.getValue();
+            synchronized (s) {
+                lss.add(new LogStream().withLogStreamName(e.getKey())
+                                       .withCreationTime(s.created)
+                                       .withUploadSequenceToken(s.token));
+            }
+        }
+        return new DescribeLogStreamsResult().withLogStreams(lss);
+    }
+
+    @Override
+    public PutLogEventsResult putLogEvents(PutLogEventsRequest request) {
+        delay();
+        await(request.getLogGroupName());
+        Stream s = stream(request.getLogGroupName(), request.getLogStreamName());
+        List<InputLogEvent> events = request.getLogEvents();
+        validate(events);
+        synchronized (s) {
+            if ((s.limiter != null) && !s.limiter.tryAcquire()) {
+                ++s.throttled;
+                AWSLogsException e = new AWSLogsException("Rate exceeded");
+                e.setErrorCode("ThrottlingException");
+                e.setStatusCode(400);
+                e.setServiceName("AWSLogs");
+                throw e;
+            }
+            String token = request.getSequenceToken();
+            if ((s.sequence > 0L) && Objects.equals(s.previous, token) && (s.hash == events.hashCode())) {
+                DataAlreadyAcceptedException e = new DataAlreadyAcceptedException(
+                        "The given batch of log events has already been accepted");
+                e.setExpectedSequenceToken(s.token);
+                throw e;
+            }
+            if (!Objects.equals(s.token, token)) {
+                InvalidSequenceTokenException e = new InvalidSequenceTokenException(
+                        String.format("The given sequenceToken is invalid. The next expected sequenceToken is: %s",
+                                      s.token));
+                e.setExpectedSequenceToken(s.token);
+                throw e;
+            }
+            if (retention > 0) {
+                for (InputLogEvent e : events) {
+                    if (s.events.size() == retention) {
+                        s.events.removeFirst();
+                    }
+                    s.events.addLast(e);
+                }
+            }
+            s.count += events.size();
+            s.previous = token;
+            s.hash = events.hashCode();
+            s.token = String.format("%056d", ++s.sequence);
+            return new PutLogEventsResult().withNextSequenceToken(s.token);
+        }
+    }
+
+    private void delay() {
+        if (latency > 0L) {
+            LockSupport.parkNanos(latency);
+        }
+    }
+
+    private void await(String group) {
+        CountDownLatch l = holds.get(group);
+        while ((l != null) && (l.getCount() > 0L)) {
+            try {
+                l.await();
+            } catch (InterruptedException e) {
+            }
+        }
+    }
+
+    private Group group(String group) {
+        Group g = groups.get(group);
+        if (g != null) {
+            return g;
+        } else {
+            throw new ResourceNotFoundException("The specified log group does not exist.");
+        }
+    }
+
+    private Stream stream(String group, String stream) {
+        Stream s = group(group).streams.get(stream);
+        if (s != null) {
+            return s;
+        } else {
+            throw new ResourceNotFoundException("The specified log stream does not exist.");
+        }
+    }
+
+    private static void validate(List<InputLogEvent> events) {
+        if ((events == null) || events.isEmpty()) {
+            throw new InvalidParameterException("Log events must not be empty");
+        }
+        if (events.size() > Buffer.MAX_BATCH_COUNT) {
+            throw new InvalidParameterException(String.format("Log events count %d exceeds %d",
+                                                              events.size(), Buffer.MAX_BATCH_COUNT));
+        }
+        long size = 0L;
+        long prev = Long.MIN_VALUE;
+        long first = events.get(0).getTimestamp();
+        for (InputLogEvent e : events) {
+            int es = Event.size(e.getMessage());
+            if (es > MAX_EVENT_SIZE) {
+                throw new InvalidParameterException(String.format("Log event size %d exceeds %d",
+                                                                  es, MAX_EVENT_SIZE));
+            }
+            size += es;
+            long ts = e.getTimestamp();
+            if (ts < prev) {
+                throw new InvalidParameterException(
+                        "Log events in a single PutLogEvents request must be in chronological order.");
+            }
+            prev = ts;
+        }
+        if (size > Buffer.MAX_BATCH_SIZE) {
+            throw new InvalidParameterException(String.format("Log events size %d exceeds %d",
+                                                              size, Buffer.MAX_BATCH_SIZE));
+        }
+        if (prev - first > Spill.MAX_BATCH_SPAN) {
+            throw new InvalidParameterException("Log events in a single PutLogEvents request must not span more "
+                                                        + "than 24 hours.");
+        }
+    }
+
+    private static final class Group {
+        public final long created = System.currentTimeMillis();
+        public final ConcurrentSkipListMap<String, Stream> streams = new ConcurrentSkipListMap<>();
+
+        public Group() {
+        }
+    }
+
+    private static final class Stream {
+        public final long created = System.currentTimeMillis();
+        public final RateLimiter limiter;
+        public final ArrayDeque<InputLogEvent> events = new ArrayDeque<>();
+        public String token;
+        public String previous;
+        public int hash;
+        public long sequence;
+        public long count;
+        public long throttled;
+
+        public Stream(double rate) {
+            this.limiter = (rate > 0.0) ? new RateLimiter(rate) : null;
+        }
+    }
+}
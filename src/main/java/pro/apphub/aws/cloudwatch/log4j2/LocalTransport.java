@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.AWSLogs;
+
+/**
+ * Hands out the process-wide {@link LocalAWSLogs}, so that appenders can be load-tested without an AWS account.
+ * Its latency, request rate and retention are taken from {@code aws.cloudwatch.local.latency} (ms, default 0),
+ * {@code aws.cloudwatch.local.rate} (requests per second and stream, default 5, 0 disables throttling) and
+ * {@code aws.cloudwatch.local.retention} (events kept per stream, default 1000000).
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class LocalTransport implements Transport {
+    private static volatile LocalAWSLogs instance;
+
+    public LocalTransport() {
+    }
+
+    @Override
+    public AWSLogs create(String region, String access, String secret) {
+        return getInstance();
+    }
+
+    public static LocalAWSLogs getInstance() {
+        LocalAWSLogs i = instance;
+        if (i == null) {
+            synchronized (LocalTransport.class) {
+                i = instance;
+                if (i == null) {
+                    i = new LocalAWSLogs(Long.getLong("aws.cloudwatch.local.latency", 0L),
+                                         Double.parseDouble(System.getProperty("aws.cloudwatch.local.rate", "5")),
+                                         Integer.getInteger("aws.cloudwatch.local.retention", 1000000));
+                    instance = i;
+                }
+            }
+        }
+        return i;
+    }
+}
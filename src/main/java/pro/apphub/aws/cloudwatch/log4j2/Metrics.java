@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of one appender. Appending threads only touch {@link LongAdder} cells;
+ * everything else is updated by flush and send threads. Durations are in milliseconds.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class Metrics implements CloudWatchAppenderMetricsMBean {
+    private final AtomicLong lost = new AtomicLong(0L);
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder droppedNewest = new LongAdder();
+    private final LongAdder droppedOldest = new LongAdder();
+    private final LongAdder droppedSampled = new LongAdder();
+    private final LongAdder droppedBlocked = new LongAdder();
+    private final LongAdder repeated = new LongAdder();
+    private final LongAdder priorityAppended = new LongAdder();
+    private final LongAdder priorityDropped = new LongAdder();
+    private final LongAdder normalDropped = new LongAdder();
+    private final Histogram priorityLatency = new Histogram();
+    private final Histogram normalLatency = new Histogram();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private final AtomicLong flushMaxNanos = new AtomicLong(0L);
+    private final LongAdder intervals = new LongAdder();
+    private final LongAdder intervalMillis = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder events = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder alreadyAccepted = new LongAdder();
+    private final Histogram latency = new Histogram();
+    private volatile Shard[] shards = new Shard[0];
+
+    public Metrics() {
+    }
+
+    void setShards(Shard[] shards) {
+        this.shards = shards;
+    }
+
+    public void append() {
+        appended.increment();
+    }
+
+    public void drop(long n) {
+        if (n > 0L) {
+            dropped.add(n);
+            lost.addAndGet(n);
+        }
+    }
+
+    public void repeat() {
+        repeated.increment();
+    }
+
+    public void appendPriority() {
+        priorityAppended.increment();
+    }
+
+    public void dropLane(boolean priority) {
+        (priority ? priorityDropped : normalDropped).increment();
+    }
+
+    public void priorityLatency(long millis) {
+        priorityLatency.record(millis * 1000L);
+    }
+
+    public void normalLatency(long millis) {
+        normalLatency.record(millis * 1000L);
+    }
+
+    public void dropNewest() {
+        droppedNewest.increment();
+        drop(1L);
+    }
+
+    public void dropOldest() {
+        droppedOldest.increment();
+        drop(1L);
+    }
+
+    public void dropSampled() {
+        droppedSampled.increment();
+        drop(1L);
+    }
+
+    public void dropBlocked() {
+        droppedBlocked.increment();
+        drop(1L);
+    }
+
+    public long takeLost() {
+        return lost.getAndSet(0L);
+    }
+
+    public void flush(long nanos) {
+        flushes.increment();
+        flushNanos.add(nanos);
+        long m = flushMaxNanos.get();
+        while ((nanos > m) && !flushMaxNanos.compareAndSet(m, nanos)) {
+            m = flushMaxNanos.get();
+        }
+    }
+
+    public void interval(long millis) {
+        intervals.increment();
+        intervalMillis.add(millis);
+    }
+
+    public void request(long nanos) {
+        requests.increment();
+        latency.record(nanos / 1000L);
+    }
+
+    public void retry() {
+        retries.increment();
+    }
+
+    public void fail() {
+        failures.increment();
+    }
+
+    public void batch(int count, long size) {
+        batches.increment();
+        events.add(count);
+        bytes.add(size);
+    }
+
+    public void alreadyAccepted(int count) {
+        alreadyAccepted.add(count);
+    }
+
+    @Override
+    public long getAppendedEvents() {
+        return appended.sum();
+    }
+
+    @Override
+    public long getDroppedEvents() {
+        return dropped.sum();
+    }
+
+    @Override
+    public long getDroppedNewestEvents() {
+        return droppedNewest.sum();
+    }
+
+    @Override
+    public long getDroppedOldestEvents() {
+        return droppedOldest.sum();
+    }
+
+    @Override
+    public long getDroppedSampledEvents() {
+        return droppedSampled.sum();
+    }
+
+    @Override
+    public long getDroppedBlockedEvents() {
+        return droppedBlocked.sum();
+    }
+
+    @Override
+    public long getRepeatedEvents() {
+        return repeated.sum();
+    }
+
+    @Override
+    public long getPriorityEvents() {
+        return priorityAppended.sum();
+    }
+
+    @Override
+    public long getPriorityDroppedEvents() {
+        return priorityDropped.sum();
+    }
+
+    @Override
+    public double getPriorityLatency50() {
+        return priorityLatency.percentile(50.0) / 1e3;
+    }
+
+    @Override
+    public double getPriorityLatency99() {
+        return priorityLatency.percentile(99.0) / 1e3;
+    }
+
+    @Override
+    public long getNormalDroppedEvents() {
+        return normalDropped.sum();
+    }
+
+    @Override
+    public double getNormalLatency50() {
+        return normalLatency.percentile(50.0) / 1e3;
+    }
+
+    @Override
+    public double getNormalLatency99() {
+        return normalLatency.percentile(99.0) / 1e3;
+    }
+
+    @Override
+    public long getBufferedEvents() {
+        long n = 0L;
+        for (Shard s : shards) {
+            n += s.size();
+        }
+        return n;
+    }
+
+    @Override
+    public long getBufferCapacity() {
+        long n = 0L;
+        for (Shard s : shards) {
+            n += s.capacity();
+        }
+        return n;
+    }
+
+    @Override
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    @Override
+    public double getFlushDurationAverage() {
+        long c = flushes.sum();
+        return (c > 0L) ? flushNanos.sum() / 1e6 / c : 0.0;
+    }
+
+    @Override
+    public double getFlushDurationMax() {
+        return flushMaxNanos.get() / 1e6;
+    }
+
+    @Override
+    public double getFlushInterval() {
+        Shard[] ss = shards;
+        long i = 0L;
+        for (Shard s : ss) {
+            i += s.getSchedule().getInterval();
+        }
+        return (ss.length > 0) ? (double) i / ss.length : 0.0;
+    }
+
+    @Override
+    public double getFlushIntervalAverage() {
+        long c = intervals.sum();
+        return (c > 0L) ? (double) intervalMillis.sum() / c : 0.0;
+    }
+
+    @Override
+    public double getEventRate() {
+        double r = 0.0;
+        for (Shard s : shards) {
+            r += s.getSchedule().getEventRate();
+        }
+        return r;
+    }
+
+    @Override
+    public double getByteRate() {
+        double r = 0.0;
+        for (Shard s : shards) {
+            r += s.getSchedule().getByteRate();
+        }
+        return r;
+    }
+
+    @Override
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getFailedRequests() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getSentBatches() {
+        return batches.sum();
+    }
+
+    @Override
+    public long getSentEvents() {
+        return events.sum();
+    }
+
+    @Override
+    public long getSentBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getAlreadyAcceptedEvents() {
+        return alreadyAccepted.sum();
+    }
+
+    @Override
+    public double getEventsPerBatch() {
+        long c = batches.sum();
+        return (c > 0L) ? (double) events.sum() / c : 0.0;
+    }
+
+    @Override
+    public double getBytesPerBatch() {
+        long c = batches.sum();
+        return (c > 0L) ? (double) bytes.sum() / c : 0.0;
+    }
+
+    @Override
+    public double getRequestLatency50() {
+        return latency.percentile(50.0) / 1e3;
+    }
+
+    @Override
+    public double getRequestLatency90() {
+        return latency.percentile(90.0) / 1e3;
+    }
+
+    @Override
+    public double getRequestLatency99() {
+        return latency.percentile(99.0) / 1e3;
+    }
+
+    @Override
+    public double getRequestLatencyMax() {
+        return latency.percentile(100.0) / 1e3;
+    }
+
+    @Override
+    public void reset() {
+        appended.reset();
+        dropped.reset();
+        droppedNewest.reset();
+        droppedOldest.reset();
+        droppedSampled.reset();
+        droppedBlocked.reset();
+        repeated.reset();
+        priorityAppended.reset();
+        priorityDropped.reset();
+        normalDropped.reset();
+        priorityLatency.reset();
+        normalLatency.reset();
+        flushes.reset();
+        flushNanos.reset();
+        flushMaxNanos.set(0L);
+        intervals.reset();
+        intervalMillis.reset();
+        requests.reset();
+        retries.reset();
+        failures.reset();
+        batches.reset();
+        events.reset();
+        bytes.reset();
+        alreadyAccepted.reset();
+        latency.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("appended=%d, dropped=%d, buffered=%d/%d, flushes=%d, interval=%.0fms, requests=%d, "
+                                     + "retries=%d, failed=%d, batches=%d, events=%d, bytes=%d, "
+                                     + "latency p50=%.1fms p99=%.1fms",
+                             getAppendedEvents(), getDroppedEvents(), getBufferedEvents(), getBufferCapacity(),
+                             getFlushes(), getFlushIntervalAverage(), getRequests(), getRetries(), getFailedRequests(),
+                             getSentBatches(), getSentEvents(), getSentBytes(), getRequestLatency50(),
+                             getRequestLatency99());
+    }
+}
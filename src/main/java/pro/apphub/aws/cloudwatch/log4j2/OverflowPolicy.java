@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import org.apache.logging.log4j.Level;
+
+/**
+ * What a shard does with an event when both buffers and the spill are full, parsed from the {@code overflowPolicy}
+ * attribute:
+ * <ul>
+ * <li>{@code DROP_NEWEST} drops the event (default);</li>
+ * <li>{@code BLOCK(timeout)} waits up to {@code timeout} ms (default 1000) for a flush to free space;</li>
+ * <li>{@code DROP_OLDEST} keeps the event in an overflow ring of {@code capacity} events that evicts its oldest
+ * event and is moved into the buffers after every flush;</li>
+ * <li>{@code SAMPLE(rate, level)} keeps events of {@code level} (default WARN) and above in the overflow ring, and
+ * only one of every {@code rate} (default 10) events below it.</li>
+ * </ul>
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class OverflowPolicy {
+    public static final OverflowPolicy DROP_NEWEST = new OverflowPolicy(Type.DROP_NEWEST, 0L, 1, Level.OFF);
+
+    public enum Type {
+        DROP_NEWEST,
+        BLOCK,
+        DROP_OLDEST,
+        SAMPLE
+    }
+
+    public final Type type;
+    public final long timeout;
+    public final int rate;
+    public final Level level;
+
+    public OverflowPolicy(Type type, long timeout, int rate, Level level) {
+        this.type = type;
+        this.timeout = timeout;
+        this.rate = rate;
+        this.level = level;
+    }
+
+    public boolean isRingUsed() {
+        return (type == Type.DROP_OLDEST) || (type == Type.SAMPLE);
+    }
+
+    public static OverflowPolicy parse(String policy) {
+        String p = policy.trim();
+        String[] args = new String[0];
+        int i = p.indexOf('(');
+        if (i >= 0) {
+            if (!p.endsWith(")")) {
+                throw new IllegalArgumentException(String.format("Overflow policy '%s' is not valid", policy));
+            }
+            String a = p.substring(i + 1, p.length() - 1).trim();
+            args = a.isEmpty() ? args : a.split("\\s*,\\s*");
+            p = p.substring(0, i).trim();
+        }
+        Type type = Type.valueOf(p.toUpperCase());
+        switch (type) {
+            case BLOCK:
+                return new OverflowPolicy(type, (args.length > 0) ? Long.parseLong(args[0]) : 1000L, 1, Level.OFF);
+            case SAMPLE:
+                return new OverflowPolicy(type, 0L, (args.length > 0) ? Math.max(Integer.parseInt(args[0]), 1) : 10,
+                                          (args.length > 1) ? Level.valueOf(args[1]) : Level.WARN);
+            default:
+                return new OverflowPolicy(type, 0L, 1, Level.OFF);
+        }
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case BLOCK:
+                return String.format("%s(%d)", type, timeout);
+            case SAMPLE:
+                return String.format("%s(%d,%s)", type, rate, level);
+            default:
+                return type.toString();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded ring of events that did not fit into the buffers, which evicts its oldest event when it is full.
+ * It is only touched by appending threads while the buffers are full, and drained by the flush thread.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class OverflowRing {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Event[] events;
+    private int head;
+    private int size;
+
+    public OverflowRing(int capacity) {
+        this.events = new Event[capacity];
+    }
+
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return size == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Event add(Event event) {
+        lock.lock();
+        try {
+            Event evicted = null;
+            int i = head + size;
+            if (i >= events.length) {
+                i -= events.length;
+            }
+            if (size == events.length) {
+                evicted = events[head];
+                head = (head + 1 == events.length) ? 0 : head + 1;
+            } else {
+                ++size;
+            }
+            events[i] = event;
+            return evicted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Event addFirst(Event event) {
+        lock.lock();
+        try {
+            if (size == events.length) {
+                return event;
+            } else {
+                head = (head == 0) ? events.length - 1 : head - 1;
+                events[head] = event;
+                ++size;
+                return null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Event poll() {
+        lock.lock();
+        try {
+            if (size > 0) {
+                Event e = events[head];
+                events[head] = null;
+                head = (head + 1 == events.length) ? 0 : head + 1;
+                --size;
+                return e;
+            } else {
+                return null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
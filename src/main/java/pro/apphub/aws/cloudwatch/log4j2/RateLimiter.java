@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket that keeps the requests of one stream under a rate, allowing bursts of up to one second of tokens.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class RateLimiter {
+    private final double rate;
+    private final double burst;
+    private double tokens;
+    private long time;
+
+    public RateLimiter(double rate) {
+        this.rate = rate / TimeUnit.SECONDS.toNanos(1L);
+        this.burst = Math.max(rate, 1.0);
+        this.tokens = burst;
+        this.time = System.nanoTime();
+    }
+
+    public boolean tryAcquire() {
+        refill(System.nanoTime());
+        if (tokens >= 1.0) {
+            tokens -= 1.0;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    public long acquire() {
+        long waited = 0L;
+        while (true) {
+            refill(System.nanoTime());
+            if (tokens >= 1.0) {
+                tokens -= 1.0;
+                return waited;
+            }
+            long d = (long) Math.ceil((1.0 - tokens) / rate);
+            try {
+                TimeUnit.NANOSECONDS.sleep(d);
+            } catch (InterruptedException e) {
+            }
+            waited += d;
+        }
+    }
+
+    private void refill(long t) {
+        tokens = Math.min(burst, tokens + (t - time) * rate);
+        time = t;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.logs.model.OperationAbortedException;
+import com.amazonaws.services.logs.model.ServiceUnavailableException;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Classifies PutLogEvents failures and computes exponential backoff delays with full jitter within a time budget.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class Retry {
+    public static final long BASE_DELAY = 100L;
+    public static final long MAX_DELAY = 10000L;
+
+    private final long budget;
+    private final long baseDelay;
+    private final long maxDelay;
+
+    public Retry(long budget) {
+        this(budget, BASE_DELAY, MAX_DELAY);
+    }
+
+    public Retry(long budget, long baseDelay, long maxDelay) {
+        this.budget = budget;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public long delay(int attempt) {
+        long d = baseDelay << Math.min(attempt, 20);
+        return ThreadLocalRandom.current().nextLong(Math.min(d, maxDelay) + 1L);
+    }
+
+    public static boolean isRetryable(Exception e) {
+        if ((e instanceof ServiceUnavailableException) || (e instanceof OperationAbortedException)) {
+            return true;
+        } else if (e instanceof AmazonServiceException) {
+            AmazonServiceException ase = (AmazonServiceException) e;
+            String code = ase.getErrorCode();
+            return (ase.getStatusCode() >= 500) || (ase.getStatusCode() == 429)
+                    || "ThrottlingException".equals(code) || "Throttling".equals(code)
+                    || "TooManyRequestsException".equals(code) || "RequestLimitExceeded".equals(code)
+                    || "RequestTimeout".equals(code) || "RequestTimeoutException".equals(code);
+        } else if (e instanceof AmazonClientException) {
+            return ((AmazonClientException) e).isRetryable();
+        } else {
+            return false;
+        }
+    }
+}
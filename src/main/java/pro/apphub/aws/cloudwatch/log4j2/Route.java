@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.util.ReadOnlyStringMap;
+
+/**
+ * Selects the stream of an event by its logger, level or a context map key, as set by the {@code route} attribute:
+ * {@code logger}, {@code level} or {@code context:<key>}. The {@code routes} attribute lists the values that get
+ * their own stream; the first one that matches wins, and other events go to the default streams. A logger value
+ * matches the logger with that name and its descendants.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class Route {
+    private final Type type;
+    private final String key;
+    private final String[] values;
+    private final Level[] levels;
+
+    public Route(Type type, String key, String[] values) {
+        this.type = type;
+        this.key = key;
+        this.values = values;
+        this.levels = new Level[values.length];
+        if (type == Type.LEVEL) {
+            for (int i = 0; i < values.length; ++i) {
+                levels[i] = Level.getLevel(values[i].toUpperCase());
+                if (levels[i] == null) {
+                    throw new IllegalArgumentException(String.format("Level '%s' is not valid", values[i]));
+                }
+            }
+        }
+    }
+
+    public static Route parse(String route, String routes) {
+        if ((route == null) || route.equalsIgnoreCase("thread")) {
+            return null;
+        }
+        String[] values = ((routes != null) && !routes.trim().isEmpty()) ? routes.trim().split("\\s*,\\s*")
+                : new String[0];
+        for (String v : values) {
+            if (!v.matches("[^:*]+")) {
+                throw new IllegalArgumentException(String.format("Route value '%s' is not valid", v));
+            }
+        }
+        if (route.equalsIgnoreCase("logger")) {
+            return new Route(Type.LOGGER, null, values);
+        } else if (route.equalsIgnoreCase("level")) {
+            return new Route(Type.LEVEL, null, values);
+        } else if (route.toLowerCase().startsWith("context:") && (route.length() > 8)) {
+            return new Route(Type.CONTEXT, route.substring(8).trim(), values);
+        } else {
+            throw new IllegalArgumentException(String.format("Route '%s' is not valid", route));
+        }
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public String value(int index) {
+        return values[index];
+    }
+
+    public int select(LogEvent event) {
+        switch (type) {
+            case LOGGER:
+                String n = event.getLoggerName();
+                if (n != null) {
+                    for (int i = 0; i < values.length; ++i) {
+                        String v = values[i];
+                        if (n.startsWith(v) && ((n.length() == v.length()) || (n.charAt(v.length()) == '.'))) {
+                            return i;
+                        }
+                    }
+                }
+                return -1;
+            case LEVEL:
+                Level l = event.getLevel();
+                for (int i = 0; i < levels.length; ++i) {
+                    if (levels[i] == l) {
+                        return i;
+                    }
+                }
+                return -1;
+            default:
+                ReadOnlyStringMap cd = event.getContextData();
+                Object o = (cd != null) ? cd.getValue(key) : null;
+                if (o != null) {
+                    String s = o.toString();
+                    for (int i = 0; i < values.length; ++i) {
+                        if (values[i].equals(s)) {
+                            return i;
+                        }
+                    }
+                }
+                return -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return (type == Type.CONTEXT) ? String.format("context:%s", key) : type.name().toLowerCase();
+    }
+
+    public enum Type {
+        LOGGER,
+        LEVEL,
+        CONTEXT
+    }
+}
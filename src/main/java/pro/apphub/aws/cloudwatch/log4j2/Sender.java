@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.AWSLogs;
+import com.amazonaws.services.logs.model.DataAlreadyAcceptedException;
+import com.amazonaws.services.logs.model.InputLogEvent;
+import com.amazonaws.services.logs.model.InvalidSequenceTokenException;
+import com.amazonaws.services.logs.model.PutLogEventsRequest;
+import com.amazonaws.services.logs.model.PutLogEventsResult;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends batches of one stream in order on its own thread, virtual on JDK 21+ when enabled (see {@link Threads}),
+ * so buffers are drained while requests are in flight. Sending starts once the client, stream and sequence token are
+ * bound; an abandoned sender spills or drops its batches.
+ * <p>
+ * A flush takes pooled batches with {@link #allocate}, which creates a new batch when all pooled ones are queued or
+ * in flight, so a buffer is drained and reopened without waiting for a request to finish. Batches beyond the pool are
+ * left to the garbage collector once sent.
+ * <p>
+ * A sender with {@code batches} batches queued or in flight is {@link #isBacklogged backlogged}: the shared flush
+ * threads skip its shard and a Disruptor handler, which owns its thread, waits in {@link #acquire}, until it catches
+ * up. The queue itself has no bound, so that a shared flush thread never parks on a slow stream; the bound is the
+ * backlog. A flush starts with fewer than {@code batches} batches queued and adds one batch per
+ * {@link Buffer#MAX_BATCH_COUNT} events or {@link Buffer#MAX_BATCH_SIZE} bytes of each buffer it flushes, so at most
+ * {@code batches - 1} plus the batches of the two lanes of one flush are queued, and the final flushes of a stopping
+ * shard add theirs.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class Sender {
+    private static final Batch STOP = new Batch(0);
+    private static final long REPLAY_INTERVAL = 1000L;
+    private static final long BACKLOG_PARK = TimeUnit.MILLISECONDS.toNanos(1L);
+    private static final Comparator<InputLogEvent> COMPARATOR = new Comparator<InputLogEvent>() {
+        @Override
+        public int compare(InputLogEvent o1, InputLogEvent o2) {
+            return o1.getTimestamp().compareTo(o2.getTimestamp());
+        }
+    };
+
+    private final String group;
+    private final CountDownLatch bound = new CountDownLatch(1);
+    private final Metrics metrics;
+    private final Spill spill;
+    private final Retry retry;
+    private final RateLimiter limiter;
+    private final Batch replay;
+    private final int batches;
+    private final AtomicInteger pending = new AtomicInteger(0);
+    private final ArrayBlockingQueue<Batch> free;
+    private final LinkedBlockingQueue<Batch> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile AWSLogs client;
+    private volatile String stream;
+    private String token;
+
+    public Sender(String name,
+                  AWSLogs client,
+                  String group,
+                  String stream,
+                  String token,
+                  int batches,
+                  final Metrics metrics,
+                  final Spill spill,
+                  Retry retry,
+                  RateLimiter limiter) {
+        this.group = group;
+        this.metrics = metrics;
+        this.spill = spill;
+        this.retry = retry;
+        this.limiter = limiter;
+        this.replay = (spill != null) ? new Batch(Buffer.MAX_BATCH_COUNT) : null;
+        this.batches = batches;
+        this.free = new ArrayBlockingQueue<>(batches);
+        for (int i = 0; i < batches; ++i) {
+            free.add(new Batch(Buffer.MAX_BATCH_COUNT));
+        }
+        this.thread = Threads.create(String.format("aws-cloudwatch-log4j2-send-%s", name), false, new Runnable() {
+            @Override
+            public void run() {
+                awaitBound();
+                if (Sender.this.client == null) {
+                    Batch batch;
+                    while ((batch = take(queue)) != STOP) {
+                        metrics.drop(batch.size() - ((spill != null) ? spill.write(batch) : 0));
+                        recycle(batch);
+                    }
+                    return;
+                }
+                long probe = 0L;
+                while (true) {
+                    Batch batch;
+                    if ((spill != null) && !spill.isEmpty()) {
+                        long time = System.currentTimeMillis();
+                        if (time >= probe) {
+                            probe = replay() ? 0L : time + REPLAY_INTERVAL;
+                        }
+                        batch = poll(queue, (probe > 0L) ? Math.max(probe - time, 1L) : 0L);
+                        if (batch == null) {
+                            continue;
+                        } else if (batch != STOP) {
+                            metrics.drop(batch.size() - spill.write(batch));
+                            recycle(batch);
+                            continue;
+                        }
+                    } else {
+                        batch = take(queue);
+                    }
+                    if (batch != STOP) {
+                        try {
+                            if (!putEvents(batch)) {
+                                metrics.drop(batch.size() - ((spill != null) ? spill.write(batch) : 0));
+                            }
+                        } catch (Throwable e) {
+                        } finally {
+                            recycle(batch);
+                        }
+                    } else {
+                        break;
+                    }
+                }
+            }
+        });
+        if (client != null) {
+            bind(client, stream, token);
+        }
+    }
+
+    public String getStream() {
+        return stream;
+    }
+
+    public boolean isBound() {
+        return bound.getCount() == 0L;
+    }
+
+    public void bind(AWSLogs client, String stream, String token) {
+        this.token = token;
+        this.stream = stream;
+        this.client = client;
+        bound.countDown();
+    }
+
+    public void abandon() {
+        bound.countDown();
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void stop() {
+        put(queue, STOP);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+        }
+    }
+
+    public boolean isBacklogged() {
+        return pending.get() >= batches;
+    }
+
+    public Batch acquire() {
+        while (isBacklogged()) {
+            LockSupport.parkNanos(BACKLOG_PARK);
+        }
+        return allocate();
+    }
+
+    public Batch allocate() {
+        Batch batch = free.poll();
+        return (batch != null) ? batch : new Batch();
+    }
+
+    public void send(Batch batch) {
+        if (!batch.isEmpty()) {
+            pending.incrementAndGet();
+            put(queue, batch);
+        } else {
+            free.offer(batch);
+        }
+    }
+
+    private void awaitBound() {
+        while (true) {
+            try {
+                bound.await();
+                return;
+            } catch (InterruptedException e) {
+            }
+        }
+    }
+
+    private void recycle(Batch batch) {
+        batch.clear();
+        free.offer(batch);
+        pending.decrementAndGet();
+    }
+
+    private boolean replay() {
+        try {
+            replay.bytes = spill.read(replay);
+            Collections.sort(replay, COMPARATOR);
+            if (replay.isEmpty() || putEvents(replay)) {
+                spill.commit();
+                return true;
+            } else {
+                return false;
+            }
+        } finally {
+            replay.clear();
+        }
+    }
+
+    private boolean putEvents(Batch events) {
+        long deadline = System.currentTimeMillis() + retry.getBudget();
+        int attempt = 0;
+        while (true) {
+            if (limiter != null) {
+                limiter.acquire();
+            }
+            long time = System.nanoTime();
+            try {
+                PutLogEventsRequest req = new PutLogEventsRequest(group, stream, events);
+                req.setSequenceToken(token);
+                PutLogEventsResult res = client.putLogEvents(req);
+                metrics.request(System.nanoTime() - time);
+                token = res.getNextSequenceToken();
+                metrics.batch(events.size(), events.bytes);
+                return true;
+            } catch (DataAlreadyAcceptedException e) {
+                metrics.request(System.nanoTime() - time);
+                metrics.alreadyAccepted(events.size());
+                token = e.getExpectedSequenceToken();
+                return true;
+            } catch (InvalidSequenceTokenException e) {
+                metrics.request(System.nanoTime() - time);
+                token = e.getExpectedSequenceToken();
+                if (attempt == 0) {
+                    ++attempt;
+                    metrics.retry();
+                    continue;
+                }
+            } catch (Exception e) {
+                metrics.request(System.nanoTime() - time);
+                if (!Retry.isRetryable(e)) {
+                    metrics.fail();
+                    return false;
+                }
+            }
+            long delay = retry.delay(attempt++);
+            if (System.currentTimeMillis() + delay > deadline) {
+                metrics.fail();
+                return false;
+            }
+            metrics.retry();
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+            }
+        }
+    }
+
+    private static Batch take(BlockingQueue<Batch> queue) {
+        while (true) {
+            try {
+                return queue.take();
+            } catch (InterruptedException e) {
+            }
+        }
+    }
+
+    private static Batch poll(BlockingQueue<Batch> queue, long timeout) {
+        try {
+            return queue.poll(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            return null;
+        }
+    }
+
+    private static void put(BlockingQueue<Batch> queue, Batch batch) {
+        while (true) {
+            try {
+                queue.put(batch);
+                return;
+            } catch (InterruptedException e) {
+            }
+        }
+    }
+}
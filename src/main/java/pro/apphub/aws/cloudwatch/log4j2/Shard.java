@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.AWSLogs;
+import org.apache.logging.log4j.Level;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Normal and optional priority {@link Lane}s flushed by the shared {@link FlushExecutor}, or a Disruptor ring
+ * buffer whose held batch it ticks, and the sender of one log stream. Events of {@code priorityLevel} and above go
+ * to the priority lane, which is flushed first, and to the normal lane when it is full; other events never use the
+ * priority lane.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class Shard {
+    private static final long BLOCK_PARK = TimeUnit.MICROSECONDS.toNanos(100L);
+
+    private final Lane normal;
+    private final Lane priority;
+    private final Level priorityLevel;
+    private final Spill spill;
+    private final Sender sender;
+    private final Metrics metrics;
+    private final AtomicBoolean enabled;
+    private final OverflowPolicy policy;
+    private final OverflowRing ring;
+    private final AtomicLong samples = new AtomicLong(0L);
+    private final FlushWait flushWait;
+    private final DisruptorQueue queue;
+    private FlushExecutor executor;
+    private long flushed = System.currentTimeMillis();
+
+    public Shard(String name,
+                 AWSLogs client,
+                 String group,
+                 String stream,
+                 String token,
+                 int capacity,
+                 int priorityCapacity,
+                 Level priorityLevel,
+                 FlushSchedule schedule,
+                 int batches,
+                 Spill spill,
+                 Retry retry,
+                 RateLimiter limiter,
+                 OverflowPolicy policy,
+                 String queue,
+                 String waitStrategy,
+                 AtomicBoolean enabled,
+                 Metrics metrics) {
+        boolean disruptor = "disruptor".equalsIgnoreCase(queue);
+        boolean lanes = !disruptor && (priorityCapacity > 0) && (priorityLevel != null);
+        this.normal = new Lane(disruptor ? 0 : lanes ? capacity - priorityCapacity : capacity);
+        this.priority = lanes ? new Lane(priorityCapacity) : null;
+        this.priorityLevel = lanes ? priorityLevel : null;
+        this.spill = spill;
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.policy = policy;
+        this.ring = policy.isRingUsed() ? new OverflowRing(capacity) : null;
+        this.sender = new Sender(name, client, group, stream, token, batches, metrics, spill, retry, limiter);
+        this.flushWait = new FlushWait(schedule);
+        this.queue = disruptor
+                ? new DisruptorQueue(name, capacity * 2, waitStrategy, sender, schedule, ring, metrics)
+                : null;
+    }
+
+    public String getStream() {
+        return sender.getStream();
+    }
+
+    public Spill getSpill() {
+        return spill;
+    }
+
+    public boolean isBound() {
+        return sender.isBound();
+    }
+
+    public void bind(AWSLogs client, String stream, String token) {
+        sender.bind(client, stream, token);
+    }
+
+    public void abandon() {
+        sender.abandon();
+    }
+
+    public void start() {
+        sender.start();
+        if (queue != null) {
+            queue.start();
+        }
+        executor = FlushExecutor.acquire();
+        flushWait.attach(executor);
+        executor.register(this);
+    }
+
+    public void signal() {
+        flushWait.signalAll();
+    }
+
+    public void drain() {
+        if (executor != null) {
+            executor.unregister(this);
+            flushWait.attach(null);
+            FlushExecutor.release(executor);
+            executor = null;
+            if (queue != null) {
+                queue.stop();
+            } else {
+                for (int i = 0; i < ((ring != null) ? 4 : 2); ++i) {
+                    try {
+                        flushNext();
+                    } catch (Throwable e) {
+                    }
+                }
+            }
+        }
+    }
+
+    public void join() {
+        drain();
+        sender.stop();
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    public int size() {
+        return (queue != null) ? queue.size() : normal.size() + ((priority != null) ? priority.size() : 0);
+    }
+
+    public int capacity() {
+        return (queue != null) ? queue.capacity()
+                : normal.capacity() + ((priority != null) ? priority.capacity() : 0);
+    }
+
+    public FlushSchedule getSchedule() {
+        return flushWait.getSchedule();
+    }
+
+    public long due() {
+        if (sender.isBacklogged()) {
+            return Long.MAX_VALUE;
+        } else if (queue != null) {
+            return queue.due();
+        } else if (priority != null) {
+            return Math.min(priority.due(flushWait), normal.due(flushWait));
+        } else {
+            return normal.due(flushWait);
+        }
+    }
+
+    public void flushNext() {
+        if (queue != null) {
+            queue.tick();
+            return;
+        }
+        flushWait.mark();
+        long now = System.currentTimeMillis();
+        long time = System.nanoTime();
+        int events = 0;
+        long bytes = 0L;
+        if (priority != null) {
+            FlushInfo fi = priority.flush(sender, metrics);
+            if (fi.events > 0) {
+                metrics.priorityLatency(now - fi.first);
+                events += fi.events;
+                bytes += fi.bytes;
+            }
+        }
+        FlushInfo fi = normal.flush(sender, metrics);
+        if (fi.events > 0) {
+            metrics.normalLatency(now - fi.first);
+            events += fi.events;
+            bytes += fi.bytes;
+        }
+        metrics.flush(System.nanoTime() - time);
+        metrics.interval(flushWait.getSchedule().update(events, bytes, now - flushed));
+        flushed = now;
+        flushWait.signalSpace();
+        if (ring != null) {
+            normal.refill(ring, flushWait, metrics);
+        }
+    }
+
+    public boolean append(Event event, Level level) {
+        return append(event.timestamp, event.message, event.length, level);
+    }
+
+    public boolean append(long timestamp, byte[] message, int length, Level level) {
+        boolean p = (priorityLevel != null) && (level != null) && level.isMoreSpecificThan(priorityLevel);
+        if (p && priority.append(timestamp, message, length, flushWait)) {
+            metrics.appendPriority();
+            return true;
+        } else if (append(timestamp, message, length) || ((spill != null) && spill.write(timestamp, message, length))) {
+            return true;
+        } else if (overflow(timestamp, message, length, level, p)) {
+            return true;
+        } else {
+            metrics.dropLane(p);
+            return false;
+        }
+    }
+
+    private boolean overflow(long timestamp, byte[] message, int length, Level level, boolean p) {
+        switch (policy.type) {
+            case BLOCK:
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.timeout);
+                long nanos;
+                while (enabled.get() && ((nanos = deadline - System.nanoTime()) > 0L)) {
+                    if (queue != null) {
+                        LockSupport.parkNanos(Math.min(nanos, BLOCK_PARK));
+                    } else {
+                        (p ? priority : normal).awaitSpace(flushWait, enabled, nanos);
+                    }
+                    if ((p && priority.append(timestamp, message, length, flushWait))
+                            || append(timestamp, message, length)) {
+                        return true;
+                    }
+                }
+                metrics.dropBlocked();
+                return false;
+            case SAMPLE:
+                if (!level.isMoreSpecificThan(policy.level) && (samples.incrementAndGet() % policy.rate != 0L)) {
+                    metrics.dropSampled();
+                    return false;
+                }
+                return displace(timestamp, message, length);
+            case DROP_OLDEST:
+                return displace(timestamp, message, length);
+            default:
+                metrics.dropNewest();
+                return false;
+        }
+    }
+
+    private boolean displace(long timestamp, byte[] message, int length) {
+        if (ring.add(new Event(timestamp, Arrays.copyOf(message, length))) != null) {
+            metrics.dropOldest();
+        }
+        return true;
+    }
+
+    private boolean append(long timestamp, byte[] message, int length) {
+        if (queue != null) {
+            return queue.append(timestamp, message, length);
+        } else {
+            return normal.append(timestamp, message, length, flushWait);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.model.InputLogEvent;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-ahead log of memory-mapped segment files that keeps events which could not be buffered or sent.
+ * <p>
+ * Every segment starts with the committed read position, followed by records of
+ * {@code [int size][long timestamp][message]}, where {@code size} covers the timestamp and the message
+ * and a zero size marks the end of the written part.
+ * <p>
+ * {@link #open()} takes a lock on the {@link #LOCK} file of the directory, so that two spills never share their
+ * segments. A spill that is not open keeps nothing.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class Spill {
+    public static final int HEADER = 8;
+    public static final long MAX_BATCH_SPAN = 24L * 60L * 60L * 1000L;
+    public static final String LOCK = ".lock";
+
+    private static final String SUFFIX = ".wal";
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final ArrayList<Segment> segments = new ArrayList<>();
+    private FileChannel channel;
+    private long sequence;
+    private int pendingIndex;
+    private int pendingPos;
+
+    public Spill(File directory, int segmentSize, long capacity) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = (int) Math.max(1L, capacity / segmentSize);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public boolean isOpen() {
+        lock.lock();
+        try {
+            return channel != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Locks the directory and maps the segments left in it.
+     *
+     * @throws OverlappingFileLockException if another spill, in this or another process, holds the directory
+     */
+    public void open() throws IOException {
+        lock.lock();
+        try {
+            if (channel != null) {
+                return;
+            }
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException(String.format("Directory '%s' is not created", directory));
+            }
+            FileChannel c = new RandomAccessFile(new File(directory, LOCK), "rw").getChannel();
+            try {
+                FileLock fl = c.tryLock();
+                if (fl == null) {
+                    throw new OverlappingFileLockException();
+                }
+                load();
+            } catch (IOException | RuntimeException e) {
+                segments.clear();
+                c.close();
+                throw e;
+            }
+            channel = c;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return segments.isEmpty() || ((segments.size() == 1) && (segments.get(0).read == segments.get(0).write));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean write(long timestamp, byte[] message) {
+        return write(timestamp, message, message.length);
+    }
+
+    public boolean write(long timestamp, byte[] message, int length) {
+        int rs = 12 + length;
+        lock.lock();
+        try {
+            if (channel == null) {
+                return false;
+            }
+            Segment s = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if ((s == null) || (s.write + rs > s.buffer.capacity())) {
+                if ((HEADER + rs > segmentSize) || (segments.size() >= maxSegments)) {
+                    return false;
+                }
+                s = create();
+            }
+            MappedByteBuffer b = s.buffer;
+            b.putLong(s.write + 4, timestamp);
+            b.position(s.write + 12);
+            b.put(message, 0, length);
+            b.putInt(s.write, 8 + length);
+            s.write += rs;
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int write(List<InputLogEvent> events) {
+        int c = 0;
+        for (InputLogEvent e : events) {
+            if (write(e.getTimestamp(), e.getMessage().getBytes(StandardCharsets.UTF_8))) {
+                ++c;
+            }
+        }
+        return c;
+    }
+
+    public int read(ArrayList<InputLogEvent> batch) {
+        lock.lock();
+        try {
+            pendingIndex = 0;
+            pendingPos = segments.isEmpty() ? HEADER : segments.get(0).read;
+            int size = 0;
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            while (pendingIndex < segments.size()) {
+                Segment s = segments.get(pendingIndex);
+                MappedByteBuffer b = s.buffer;
+                while (pendingPos < s.write) {
+                    int rs = b.getInt(pendingPos);
+                    long timestamp = b.getLong(pendingPos + 4);
+                    int es = rs - 8 + Event.OVERHEAD;
+                    if ((batch.size() == Buffer.MAX_BATCH_COUNT) || (size + es > Buffer.MAX_BATCH_SIZE)
+                            || (Math.max(max, timestamp) - Math.min(min, timestamp) > MAX_BATCH_SPAN)) {
+                        return size;
+                    }
+                    min = Math.min(min, timestamp);
+                    max = Math.max(max, timestamp);
+                    byte[] message = new byte[rs - 8];
+                    b.position(pendingPos + 12);
+                    b.get(message);
+                    batch.add(new InputLogEvent().withTimestamp(timestamp)
+                                                 .withMessage(new String(message, StandardCharsets.UTF_8)));
+                    size += es;
+                    pendingPos += 4 + rs;
+                }
+                if (pendingIndex + 1 < segments.size()) {
+                    ++pendingIndex;
+                    pendingPos = HEADER;
+                } else {
+                    return size;
+                }
+            }
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void commit() {
+        lock.lock();
+        try {
+            for (int i = 0; i < pendingIndex; ++i) {
+                delete(segments.remove(0));
+            }
+            pendingIndex = 0;
+            if (!segments.isEmpty()) {
+                Segment s = segments.get(0);
+                s.read = pendingPos;
+                s.buffer.putInt(0, pendingPos);
+                if ((segments.size() == 1) && (s.read == s.write)) {
+                    delete(segments.remove(0));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() {
+        lock.lock();
+        try {
+            if (channel != null) {
+                for (Segment s : segments) {
+                    s.buffer.force();
+                }
+                segments.clear();
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                }
+                channel = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void load() throws IOException {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SUFFIX);
+            }
+        });
+        if (files != null) {
+            Arrays.sort(files);
+            for (File f : files) {
+                Segment s = new Segment(f, map(f, (int) Math.max(f.length(), segmentSize)));
+                s.read = Math.max(s.buffer.getInt(0), HEADER);
+                int pos = HEADER;
+                while ((pos + 4 <= s.buffer.capacity()) && (s.buffer.getInt(pos) > 0)) {
+                    pos += 4 + s.buffer.getInt(pos);
+                }
+                s.write = pos;
+                segments.add(s);
+                String n = f.getName();
+                sequence = Math.max(sequence, Long.parseLong(n.substring(0, n.length() - SUFFIX.length())) + 1L);
+            }
+        }
+    }
+
+    private Segment create() throws IOException {
+        File f = new File(directory, String.format("%016d%s", sequence++, SUFFIX));
+        Segment s = new Segment(f, map(f, segmentSize));
+        s.read = HEADER;
+        s.write = HEADER;
+        s.buffer.putInt(0, HEADER);
+        segments.add(s);
+        return s;
+    }
+
+    private static void delete(Segment segment) {
+        segment.file.delete();
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0L, size);
+        }
+    }
+
+    private static final class Segment {
+        public final File file;
+        public final MappedByteBuffer buffer;
+        public int read;
+        public int write;
+
+        public Segment(File file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import org.apache.logging.log4j.status.StatusLogger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Creates the flush and send threads: virtual threads when the {@code aws.cloudwatch.virtual.threads} system
+ * property is {@code true} and the JVM supports them (JDK 21+), platform threads otherwise. Virtual threads are
+ * looked up by reflection, so the library keeps its Java 8 target.
+ * <p>
+ * The flush and send paths block only on {@code java.util.concurrent} locks, queues and {@code LockSupport}, which
+ * unmount a virtual thread instead of pinning its carrier. Virtual threads are always daemon threads.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+final class Threads {
+    public static final String PROPERTY = "aws.cloudwatch.virtual.threads";
+
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method UNSTARTED;
+    private static final AtomicBoolean WARNED = new AtomicBoolean(false);
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method unstarted = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class);
+            unstarted = builder.getMethod("unstarted", Runnable.class);
+            unstarted.invoke(name.invoke(ofVirtual.invoke(null), "aws-cloudwatch-log4j2-probe"), new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+        } catch (Throwable e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        UNSTARTED = unstarted;
+    }
+
+    private Threads() {
+    }
+
+    public static boolean isVirtualAvailable() {
+        return OF_VIRTUAL != null;
+    }
+
+    public static boolean isVirtual() {
+        if (Boolean.getBoolean(PROPERTY)) {
+            if (OF_VIRTUAL != null) {
+                return true;
+            } else if (WARNED.compareAndSet(false, true)) {
+                StatusLogger.getLogger().warn("CloudWatchAppender uses platform threads, virtual threads need JDK 21+");
+            }
+        }
+        return false;
+    }
+
+    public static Thread create(String name, boolean daemon, Runnable runnable) {
+        if (isVirtual()) {
+            try {
+                return (Thread) UNSTARTED.invoke(NAME.invoke(OF_VIRTUAL.invoke(null), name), runnable);
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(String.format("Virtual thread '%s' is not created", name), e);
+            }
+        } else {
+            Thread t = new Thread(runnable, name);
+            t.setDaemon(daemon);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.AWSLogs;
+
+/**
+ * Creates the CloudWatch Logs client of an appender. It is selected by the {@code transport} attribute:
+ * {@code aws} (default) for the service, {@code local} for the in-memory {@link LocalAWSLogs}, or the name of a
+ * class implementing this interface with a public no-argument constructor.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public interface Transport {
+    AWSLogs create(String region, String access, String secret);
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.AWSLogs;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Checks that an appender starts without waiting for its transport, buffers events until the bootstrap
+ * finishes, drops them when it is stopped before that, and stops at once even when the transport swallows the
+ * interrupt of the bootstrap thread.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class BootstrapTest {
+    private static final CountDownLatch READY = new CountDownLatch(1);
+    private static final LocalAWSLogs LOGS = new LocalAWSLogs(0L, 0.0, 1000);
+
+    public BootstrapTest() {
+    }
+
+    @Test
+    public void testDeferred() throws Exception {
+        long time = System.currentTimeMillis();
+        CloudWatchAppender appender = appender("deferred", DeferredTransport.class.getName());
+        appender.start();
+        Assert.assertTrue(System.currentTimeMillis() - time < 1000L);
+        append(appender, 100);
+        Assert.assertNull(appender.getStream());
+        READY.countDown();
+        time = System.currentTimeMillis();
+        while ((appender.getStream() == null) && (System.currentTimeMillis() - time < 10000L)) {
+            Thread.sleep(10L);
+        }
+        appender.stop();
+        Assert.assertEquals(CloudWatchAppender.getInstance(), appender.getStream());
+        Assert.assertEquals(100L, LOGS.getEventCount("deferred", appender.getStream()));
+        Assert.assertEquals(0L, appender.getMetrics().getDroppedEvents());
+    }
+
+    @Test
+    public void testFailed() throws Exception {
+        long time = System.currentTimeMillis();
+        CloudWatchAppender appender = appender("failed", FailedTransport.class.getName());
+        appender.start();
+        append(appender, 100);
+        appender.stop();
+        Assert.assertTrue(System.currentTimeMillis() - time < 5000L);
+        Assert.assertNull(appender.getStream());
+        Assert.assertEquals(100L, appender.getMetrics().getDroppedEvents());
+    }
+
+    @Test
+    public void testInterrupted() throws Exception {
+        CloudWatchAppender.getInstance();
+        CloudWatchAppender appender = appender("interrupted", InterruptedTransport.class.getName());
+        appender.start();
+        Thread.sleep(100L);
+        long time = System.currentTimeMillis();
+        appender.stop();
+        Assert.assertTrue(System.currentTimeMillis() - time < 250L);
+        Assert.assertNull(appender.getStream());
+    }
+
+    private static CloudWatchAppender appender(String group, String transport) {
+        return CloudWatchAppender.newBuilder()
+                                 .setName(group)
+                                 .setGroup(group)
+                                 .setTransport(transport)
+                                 .setCapacity(1000)
+                                 .setRequestRate(0.0)
+                                 .setLayout(PatternLayout.newBuilder()
+                                                         .withPattern("%msg")
+                                                         .withCharset(StandardCharsets.UTF_8)
+                                                         .build())
+                                 .build();
+    }
+
+    private static void append(CloudWatchAppender appender, int count) {
+        for (int i = 0; i < count; ++i) {
+            appender.append(Log4jLogEvent.newBuilder()
+                                         .setLoggerName("test")
+                                         .setLevel(Level.INFO)
+                                         .setTimeMillis(System.currentTimeMillis())
+                                         .setMessage(new SimpleMessage(String.format("event %d", i)))
+                                         .build());
+        }
+    }
+
+    public static final class DeferredTransport implements Transport {
+        public DeferredTransport() {
+        }
+
+        @Override
+        public AWSLogs create(String region, String access, String secret) {
+            try {
+                READY.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return LOGS;
+        }
+    }
+
+    public static final class FailedTransport implements Transport {
+        public FailedTransport() {
+        }
+
+        @Override
+        public AWSLogs create(String region, String access, String secret) {
+            throw new IllegalStateException("unavailable");
+        }
+    }
+
+    public static final class InterruptedTransport implements Transport {
+        public InterruptedTransport() {
+        }
+
+        @Override
+        public AWSLogs create(String region, String access, String secret) {
+            while (!Thread.interrupted()) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10L));
+            }
+            throw new IllegalStateException("interrupted");
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.AbstractAWSLogs;
+import com.amazonaws.services.logs.model.InputLogEvent;
+import com.amazonaws.services.logs.model.PutLogEventsRequest;
+import com.amazonaws.services.logs.model.PutLogEventsResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks that {@link Buffer#flush} packs PutLogEvents batches up to the exact service limits, and hands them to a
+ * sender whose requests are stuck without waiting for a free batch, while {@link Sender#acquire} waits until the
+ * backlogged sender catches up.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class BufferBatchTest {
+    private static final String[] PARTS = {"Hello, World ", "Привет, мир ", "你好，世界 ", "🌍 ", "é"};
+
+    public BufferBatchTest() {
+    }
+
+    @Test
+    public void testSize() throws Exception {
+        Random random = new Random(1L);
+        ArrayList<String> messages = new ArrayList<>();
+        for (int i = 0; i < 20000; ++i) {
+            StringBuilder sb = new StringBuilder();
+            int parts = 1 + random.nextInt(64);
+            for (int j = 0; j < parts; ++j) {
+                sb.append(PARTS[random.nextInt(PARTS.length)]);
+            }
+            messages.add(sb.toString());
+        }
+        List<List<InputLogEvent>> batches = flush(messages);
+        int count = 0;
+        for (int i = 0; i < batches.size(); ++i) {
+            List<InputLogEvent> batch = batches.get(i);
+            int size = size(batch);
+            Assert.assertTrue(batch.size() <= Buffer.MAX_BATCH_COUNT);
+            Assert.assertTrue(size <= Buffer.MAX_BATCH_SIZE);
+            if (i + 1 < batches.size()) {
+                Assert.assertTrue(size + size(batches.get(i + 1).subList(0, 1)) > Buffer.MAX_BATCH_SIZE);
+            }
+            count += batch.size();
+        }
+        Assert.assertEquals(messages.size(), count);
+    }
+
+    @Test
+    public void testCount() throws Exception {
+        ArrayList<String> messages = new ArrayList<>();
+        for (int i = 0; i < 25000; ++i) {
+            messages.add("é");
+        }
+        List<List<InputLogEvent>> batches = flush(messages);
+        Assert.assertEquals(3, batches.size());
+        Assert.assertEquals(Buffer.MAX_BATCH_COUNT, batches.get(0).size());
+        Assert.assertEquals(Buffer.MAX_BATCH_COUNT, batches.get(1).size());
+        Assert.assertEquals(5000, batches.get(2).size());
+    }
+
+    @Test
+    public void testBlocked() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicLong sent = new AtomicLong(0L);
+        AbstractAWSLogs client = new AbstractAWSLogs() {
+            @Override
+            public PutLogEventsResult putLogEvents(PutLogEventsRequest request) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                }
+                sent.addAndGet(request.getLogEvents().size());
+                return new PutLogEventsResult();
+            }
+        };
+        Metrics metrics = new Metrics();
+        final Sender sender = new Sender("test", client, "group", "stream", null, 1, metrics, null, new Retry(0L),
+                                          null);
+        sender.start();
+        Thread acquire = new Thread("acquire") {
+            @Override
+            public void run() {
+                sender.acquire();
+            }
+        };
+        try {
+            Buffer buffer = new Buffer(35000);
+            FlushWait flushWait = new FlushWait(60);
+            long time = System.currentTimeMillis();
+            for (int i = 0; i < 35000; ++i) {
+                Assert.assertTrue(buffer.append(new Event(time, "é"), flushWait));
+            }
+            long start = System.currentTimeMillis();
+            buffer.flush(sender, new FlushInfo(0L), metrics);
+            Assert.assertTrue(System.currentTimeMillis() - start < 1000L);
+            Assert.assertTrue(buffer.isReady());
+            Assert.assertTrue(buffer.append(new Event(time, "é"), flushWait));
+            Assert.assertTrue(sender.isBacklogged());
+            acquire.start();
+            acquire.join(200L);
+            Assert.assertTrue(acquire.isAlive());
+        } finally {
+            release.countDown();
+            acquire.join(10000L);
+            sender.stop();
+        }
+        Assert.assertFalse(acquire.isAlive());
+        Assert.assertEquals(35000L, sent.get());
+        Assert.assertEquals(35000L * (2 + Event.OVERHEAD), metrics.getSentBytes());
+    }
+
+    private static List<List<InputLogEvent>> flush(List<String> messages) {
+        final List<List<InputLogEvent>> batches = new ArrayList<>();
+        AbstractAWSLogs client = new AbstractAWSLogs() {
+            @Override
+            public PutLogEventsResult putLogEvents(PutLogEventsRequest request) {
+                batches.add(new ArrayList<>(request.getLogEvents()));
+                return new PutLogEventsResult();
+            }
+        };
+        Metrics metrics = new Metrics();
+        Sender sender = new Sender("test", client, "group", "stream", null, 4, metrics, null, new Retry(0L), null);
+        sender.start();
+        Buffer buffer = new Buffer(messages.size());
+        FlushWait flushWait = new FlushWait(60);
+        long time = System.currentTimeMillis();
+        for (String m : messages) {
+            Assert.assertTrue(buffer.append(new Event(time, m), flushWait));
+        }
+        buffer.flush(sender, new FlushInfo(0L), metrics);
+        sender.stop();
+        Assert.assertEquals(0L, metrics.getDroppedEvents());
+        return batches;
+    }
+
+    private static int size(List<InputLogEvent> batch) {
+        int size = 0;
+        for (InputLogEvent e : batch) {
+            size += e.getMessage().getBytes(StandardCharsets.UTF_8).length + Event.OVERHEAD;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that {@link Buffer#append} accepts exactly its capacity when more threads than stripes offer more events
+ * than fit. The throughput against the {@code ConcurrentLinkedQueue} it replaced is measured by
+ * {@code BufferBenchmark} and {@code QueueBenchmark} of the benchmarks module.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class BufferContentionTest {
+    private static final int EVENTS = 1 << 16;
+    private static final int[] THREADS = {1, 4, 16, 64};
+
+    public BufferContentionTest() {
+    }
+
+    @Test
+    public void test() throws Exception {
+        Event event = new Event(System.currentTimeMillis(), "Hello, World");
+        for (int t : THREADS) {
+            Buffer buffer = new Buffer(EVENTS, 8);
+            Assert.assertEquals(EVENTS, run(t, buffer, event));
+            Assert.assertEquals(EVENTS, buffer.size());
+            Assert.assertFalse(buffer.isReady());
+            Assert.assertFalse(buffer.append(event, new FlushWait(60)));
+        }
+    }
+
+    private static int run(int threads, final Buffer buffer, final Event event) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final FlushWait flushWait = new FlushWait(60);
+        final AtomicInteger accepted = new AtomicInteger(0);
+        final int count = 2 * EVENTS / threads;
+        ArrayList<Thread> ts = new ArrayList<>(threads);
+        for (int i = 0; i < threads; ++i) {
+            Thread t = new Thread(String.format("test-%d", i)) {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                    }
+                    int n = 0;
+                    for (int j = 0; j < count; ++j) {
+                        if (buffer.append(event, flushWait)) {
+                            ++n;
+                        }
+                    }
+                    accepted.addAndGet(n);
+                }
+            };
+            t.start();
+            ts.add(t);
+        }
+        start.countDown();
+        for (Thread t : ts) {
+            t.join();
+        }
+        return accepted.get();
+    }
+}
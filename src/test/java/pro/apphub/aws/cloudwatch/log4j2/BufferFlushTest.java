@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.AbstractAWSLogs;
+import com.amazonaws.services.logs.model.PutLogEventsRequest;
+import com.amazonaws.services.logs.model.PutLogEventsResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks that {@link Buffer#flush} sends every event appended by 64 producer threads that keep appending while it
+ * closes the buffer. How long it waits for in-flight appends is measured by {@code FlushContentionBenchmark} of the
+ * benchmarks module.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class BufferFlushTest {
+    private static final int FLUSHES = 256;
+
+    public BufferFlushTest() {
+    }
+
+    @Test
+    public void test() throws Exception {
+        final Buffer buffer = new Buffer(65536);
+        final FlushWait flushWait = new FlushWait(60);
+        final AtomicBoolean enabled = new AtomicBoolean(true);
+        final AtomicLong appended = new AtomicLong(0L);
+        ArrayList<Thread> ts = new ArrayList<>(64);
+        for (int i = 0; i < 64; ++i) {
+            Thread t = new Thread(String.format("test-%d", i)) {
+                @Override
+                public void run() {
+                    int j = 0;
+                    while (enabled.get()) {
+                        Event e = new Event(System.currentTimeMillis(), String.format("Hello, World %d", j++));
+                        if (buffer.append(e, flushWait)) {
+                            appended.incrementAndGet();
+                        } else {
+                            Thread.yield();
+                        }
+                    }
+                }
+            };
+            t.start();
+            ts.add(t);
+        }
+        final AtomicLong sent = new AtomicLong(0L);
+        AbstractAWSLogs client = new AbstractAWSLogs() {
+            @Override
+            public PutLogEventsResult putLogEvents(PutLogEventsRequest request) {
+                sent.addAndGet(request.getLogEvents().size());
+                return new PutLogEventsResult().withNextSequenceToken("token");
+            }
+        };
+        Metrics metrics = new Metrics();
+        Sender sender = new Sender("test", client, "group", "stream", null, 4, metrics, null, new Retry(0L), null);
+        sender.start();
+        FlushInfo info = new FlushInfo(0L);
+        try {
+            for (int i = 0; i < FLUSHES; ++i) {
+                Thread.sleep(1L);
+                info = buffer.flush(sender, info, metrics);
+            }
+        } finally {
+            enabled.set(false);
+            for (Thread t : ts) {
+                t.join();
+            }
+        }
+        buffer.flush(sender, info, metrics);
+        sender.stop();
+        Assert.assertEquals(appended.get(), sent.get());
+        Assert.assertTrue(appended.get() > 0L);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.AbstractAWSLogs;
+import com.amazonaws.services.logs.model.InputLogEvent;
+import com.amazonaws.services.logs.model.PutLogEventsRequest;
+import com.amazonaws.services.logs.model.PutLogEventsResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Checks that {@link Buffer#flush} merges the stripes of many producer threads into one ordered sequence.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class BufferMergeTest {
+    private static final int THREADS = 16;
+    private static final int EVENTS = 4096;
+
+    public BufferMergeTest() {
+    }
+
+    @Test
+    public void test() throws Exception {
+        final List<InputLogEvent> events = new ArrayList<>();
+        AbstractAWSLogs client = new AbstractAWSLogs() {
+            @Override
+            public PutLogEventsResult putLogEvents(PutLogEventsRequest request) {
+                events.addAll(request.getLogEvents());
+                return new PutLogEventsResult();
+            }
+        };
+        Metrics metrics = new Metrics();
+        Sender sender = new Sender("test", client, "group", "stream", null, 4, metrics, null, new Retry(0L), null);
+        sender.start();
+        final Buffer buffer = new Buffer(THREADS * EVENTS, 8);
+        final FlushWait flushWait = new FlushWait(60);
+        final long time = System.currentTimeMillis();
+        ArrayList<Thread> ts = new ArrayList<>(THREADS);
+        for (int i = 0; i < THREADS; ++i) {
+            final int t = i;
+            Thread thread = new Thread(String.format("test-%d", i)) {
+                @Override
+                public void run() {
+                    for (int j = 0; j < EVENTS; ++j) {
+                        long timestamp = time + j + (((j % 7) == 3) ? -2 : 0);
+                        Assert.assertTrue(buffer.append(new Event(timestamp, String.format("%d-%d", t, j)), flushWait));
+                    }
+                }
+            };
+            thread.start();
+            ts.add(thread);
+        }
+        for (Thread t : ts) {
+            t.join();
+        }
+        metrics.drop(1L);
+        buffer.flush(sender, new FlushInfo(0L), metrics);
+        sender.stop();
+        Assert.assertEquals(THREADS * EVENTS + 1, events.size());
+        HashSet<String> messages = new HashSet<>();
+        for (int i = 0; i < events.size(); ++i) {
+            if (i > 0) {
+                Assert.assertTrue(events.get(i - 1).getTimestamp() <= events.get(i).getTimestamp());
+            }
+            messages.add(events.get(i).getMessage());
+        }
+        Assert.assertEquals(THREADS * EVENTS + 1, messages.size());
+    }
+}
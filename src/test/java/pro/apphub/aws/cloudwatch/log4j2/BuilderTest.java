@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import org.apache.logging.log4j.core.config.ConfigurationSource;
+import org.apache.logging.log4j.core.config.xml.XmlConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks that {@link CloudWatchAppender.Builder} reads the attributes of a {@code CloudWatchAppender} element, falls
+ * back to the defaults for the others, and that the 2.5 constructor still builds an appender.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class BuilderTest {
+    public BuilderTest() {
+    }
+
+    @Test
+    public void testConfiguration() throws Exception {
+        String xml = "<Configuration status=\"warn\"><Appenders>"
+                + "<CloudWatchAppender name=\"cw\" group=\"builder/group\" transport=\"local\" capacity=\"2000\""
+                + " batches=\"2\" route=\"level\" routes=\"ERROR\" priorityShare=\"0.25\" compression=\"gzip\">"
+                + "<PatternLayout pattern=\"%msg\"/></CloudWatchAppender>"
+                + "</Appenders><Loggers><Root level=\"off\"/></Loggers></Configuration>";
+        XmlConfiguration configuration = new XmlConfiguration(null, new ConfigurationSource(
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))));
+        configuration.initialize();
+        CloudWatchAppender appender = configuration.getAppender("cw");
+        Assert.assertNotNull(appender);
+        Assert.assertEquals("builder/group", appender.getGroup());
+        Assert.assertEquals("local", appender.getTransport());
+        Assert.assertEquals(2000, appender.getCapacity());
+        Assert.assertEquals(2, appender.getBatches());
+        Assert.assertEquals("level", appender.getRoute());
+        Assert.assertEquals(2, appender.getShards());
+        Assert.assertEquals(0.25, appender.getPriorityShare(), 0.0);
+        Assert.assertEquals("gzip", appender.getCompression());
+        Assert.assertEquals(4096, appender.getLength());
+        Assert.assertEquals(60, appender.getSpan());
+        Assert.assertEquals("DROP_NEWEST", appender.getOverflowPolicy());
+        Assert.assertEquals("WARN", appender.getPriorityLevel());
+    }
+
+    @Test
+    public void testConstructor() {
+        CloudWatchAppender appender = new CloudWatchAppender("legacy", "legacy/group", "test", null, null, null, null,
+                                                             1000, 4096, 60, null, null);
+        Assert.assertEquals("legacy", appender.getName());
+        Assert.assertEquals("legacy/group", appender.getGroup());
+        Assert.assertEquals(1000, appender.getCapacity());
+        Assert.assertEquals("aws", appender.getTransport());
+        Assert.assertEquals(1, appender.getShards());
+    }
+}
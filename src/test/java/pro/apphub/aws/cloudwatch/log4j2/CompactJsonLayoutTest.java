@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks fields, escaping, context filtering and field dropping of {@link CompactJsonLayout}, and that its bytes
+ * come through {@link EventEncoder} unchanged.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class CompactJsonLayoutTest {
+    public CompactJsonLayoutTest() {
+    }
+
+    @Test
+    public void testFields() throws Exception {
+        CompactJsonLayout layout = CompactJsonLayout.createLayout(null, null);
+        Assert.assertEquals("{\"l\":\"INFO\",\"n\":\"a.b.C\",\"th\":\"main\",\"m\":\"hello 42\","
+                                    + "\"c\":{\"k1\":\"v1\",\"k2\":\"v2\"}}",
+                            layout.toSerializable(event("hello {}", 42)));
+        Assert.assertEquals("{\"t\":1500000000000,\"m\":\"hello 42\"}",
+                            CompactJsonLayout.createLayout("level, logger,thread,context", null)
+                                             .toSerializable(event("hello {}", 42)));
+        Assert.assertEquals("{\"n\":\"a.b.C\",\"c\":{\"k2\":\"v2\"}}",
+                            CompactJsonLayout.createLayout("time,level,thread,message", "k2,k3")
+                                             .toSerializable(event("hello {}", 42)));
+        Assert.assertEquals("{\"n\":\"a.b.C\"}",
+                            CompactJsonLayout.createLayout("time,level,thread,message", "k3")
+                                             .toSerializable(event("hello {}", 42)));
+    }
+
+    @Test
+    public void testEscaping() throws Exception {
+        CompactJsonLayout layout = CompactJsonLayout.createLayout("time,level,logger,thread,context", null);
+        Assert.assertEquals("{\"m\":\"q\\\" b\\\\ n\\n t\\t c\\u0001 aé你🌍 ?\"}",
+                            layout.toSerializable(event("q\" b\\ n\n t\t c\u0001 aé你🌍 \uD83C", null)));
+        LogEvent e = Log4jLogEvent.newBuilder()
+                                  .setLevel(Level.ERROR)
+                                  .setMessage(new SimpleMessage("failed"))
+                                  .setThrown(new IllegalStateException("broken"))
+                                  .build();
+        String s = layout.toSerializable(e);
+        Assert.assertTrue(s, s.startsWith("{\"m\":\"failed\",\"x\":\"java.lang.IllegalStateException: broken"
+                                                  + "\\n\\tat "));
+    }
+
+    @Test
+    public void testEncoder() throws Exception {
+        CompactJsonLayout layout = CompactJsonLayout.createLayout(null, null);
+        LogEvent e = event("hello {}", "aé你🌍");
+        byte[] b = new EventEncoder(4096).encode(layout, e);
+        Assert.assertArrayEquals(layout.toByteArray(e), b);
+        Assert.assertEquals(layout.toSerializable(e), new String(b, StandardCharsets.UTF_8));
+    }
+
+    private static LogEvent event(String message, Object parameter) {
+        SortedArrayStringMap context = new SortedArrayStringMap();
+        context.putValue("k1", "v1");
+        context.putValue("k2", "v2");
+        return Log4jLogEvent.newBuilder()
+                            .setLoggerName("a.b.C")
+                            .setLevel(Level.INFO)
+                            .setThreadName("main")
+                            .setTimeMillis(1500000000000L)
+                            .setMessage((parameter != null) ? new ParameterizedMessage(message, parameter)
+                                                            : new SimpleMessage(message))
+                            .setContextData(context)
+                            .build();
+    }
+}
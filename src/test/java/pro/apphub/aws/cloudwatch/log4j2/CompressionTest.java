@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Response;
+import com.amazonaws.services.logs.model.DescribeLogStreamsRequest;
+import com.amazonaws.services.logs.model.PutLogEventsRequest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Checks that {@link Compression} produces valid gzip, compresses only PutLogEvents bodies of at least
+ * {@link Compression#MIN_SIZE} bytes and reuses its compressors.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class CompressionTest {
+    public CompressionTest() {
+    }
+
+    @Test
+    public void testCompressor() throws Exception {
+        Compression.Compressor c = new Compression.Compressor(1);
+        for (int events : new int[]{10, 10000, 100}) {
+            byte[] b = payload(events);
+            int n = c.compress(b, b.length);
+            Assert.assertTrue(n < b.length);
+            Assert.assertArrayEquals(b, gunzip(new ByteArrayInputStream(c.output(), 0, n)));
+        }
+    }
+
+    @Test
+    public void testRequest() throws Exception {
+        Compression compression = Compression.parse("gzip");
+        byte[] b = payload(1000);
+        DefaultRequest<PutLogEventsRequest> request = new DefaultRequest<>(new PutLogEventsRequest(), "AWSLogs");
+        request.setContent(new ByteArrayInputStream(b));
+        request.addHeader("Content-Length", Integer.toString(b.length));
+        compression.beforeRequest(request);
+        Assert.assertEquals("gzip", request.getHeaders().get("Content-Encoding"));
+        int n = Integer.parseInt(request.getHeaders().get("Content-Length"));
+        Assert.assertTrue(n < b.length / 4);
+        Assert.assertArrayEquals(b, gunzip(request.getContent()));
+        request.getContent().reset();
+        Assert.assertArrayEquals(b, gunzip(request.getContent()));
+        compression.afterResponse(request, new Response<>(null, null));
+
+        DefaultRequest<PutLogEventsRequest> next = new DefaultRequest<>(new PutLogEventsRequest(), "AWSLogs");
+        next.setContent(new ByteArrayInputStream(b));
+        compression.beforeRequest(next);
+        Assert.assertEquals(n, Integer.parseInt(next.getHeaders().get("Content-Length")));
+        Assert.assertArrayEquals(b, gunzip(next.getContent()));
+        compression.afterError(next, null, new RuntimeException());
+    }
+
+    @Test
+    public void testSkip() throws Exception {
+        Compression compression = Compression.parse("gzip:6");
+        byte[] b = payload(2);
+        Assert.assertTrue(b.length < Compression.MIN_SIZE);
+        DefaultRequest<PutLogEventsRequest> small = new DefaultRequest<>(new PutLogEventsRequest(), "AWSLogs");
+        small.setContent(new ByteArrayInputStream(b));
+        compression.beforeRequest(small);
+        Assert.assertNull(small.getHeaders().get("Content-Encoding"));
+        Assert.assertArrayEquals(b, read(small.getContent()));
+
+        b = payload(1000);
+        DefaultRequest<DescribeLogStreamsRequest> other = new DefaultRequest<>(new DescribeLogStreamsRequest(),
+                                                                               "AWSLogs");
+        other.setContent(new ByteArrayInputStream(b));
+        compression.beforeRequest(other);
+        Assert.assertNull(other.getHeaders().get("Content-Encoding"));
+        Assert.assertArrayEquals(b, read(other.getContent()));
+
+        Assert.assertNull(Compression.parse("none"));
+        Assert.assertNull(Compression.parse(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParse() {
+        Compression.parse("zstd");
+    }
+
+    private static byte[] payload(int events) {
+        StringBuilder sb = new StringBuilder("{\"logGroupName\":\"group\",\"logStreamName\":\"stream\","
+                                                     + "\"logEvents\":[");
+        for (int i = 0; i < events; ++i) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(String.format("{\"timestamp\":%d,\"message\":\"INFO  pro.apphub.service.Handler - "
+                                    + "Request %d processed in %d ms\"}", 1500000000000L + i, i, i % 97));
+        }
+        return sb.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gunzip(InputStream in) throws IOException {
+        return read(new GZIPInputStream(in));
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] b = new byte[4096];
+        int n;
+        while ((n = in.read(b)) >= 0) {
+            out.write(b, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.model.InputLogEvent;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that {@link Dedup} collapses repeats of a template within its window into one summary, and that the
+ * appender delivers the first event and the summary.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class DedupTest {
+    private static final long T = 1500000000000L;
+
+    public DedupTest() {
+    }
+
+    @Test
+    public void testWindow() throws Exception {
+        final List<LogEvent> summaries = new ArrayList<>();
+        Metrics metrics = new Metrics();
+        Dedup dedup = new Dedup("test", 1000L, 16, metrics) {
+            @Override
+            protected void emit(LogEvent summary) {
+                summaries.add(summary);
+            }
+        };
+        Assert.assertTrue(dedup.accept(event("a", Level.ERROR, "failed {}", T)));
+        for (int i = 1; i < 100; ++i) {
+            Assert.assertFalse(dedup.accept(event("a", Level.ERROR, "failed {}", T + i)));
+        }
+        Assert.assertTrue(dedup.accept(event("b", Level.ERROR, "failed {}", T + 100L)));
+        Assert.assertTrue(dedup.accept(event("a", Level.WARN, "failed {}", T + 100L)));
+        Assert.assertTrue(dedup.accept(event("a", Level.ERROR, "other {}", T + 100L)));
+        Assert.assertEquals(99L, metrics.getRepeatedEvents());
+        Assert.assertTrue(summaries.isEmpty());
+
+        Assert.assertTrue(dedup.accept(event("a", Level.ERROR, "failed {}", T + 1000L)));
+        Assert.assertEquals(1, summaries.size());
+        Assert.assertEquals("[REPEATED 99 TIMES]: failed {}", summaries.get(0).getMessage().getFormattedMessage());
+        Assert.assertEquals("a", summaries.get(0).getLoggerName());
+        Assert.assertEquals(Level.ERROR, summaries.get(0).getLevel());
+        Assert.assertEquals(T + 99L, summaries.get(0).getTimeMillis());
+
+        Assert.assertFalse(dedup.accept(event("a", Level.ERROR, "failed {}", T + 1001L)));
+        dedup.sweep(T + 1500L);
+        Assert.assertEquals(1, summaries.size());
+        dedup.sweep(T + 2000L);
+        Assert.assertEquals(2, summaries.size());
+        Assert.assertEquals("[REPEATED 1 TIMES]: failed {}", summaries.get(1).getMessage().getFormattedMessage());
+        Assert.assertTrue(dedup.accept(event("a", Level.ERROR, "failed {}", T + 2001L)));
+        dedup.sweep(Long.MAX_VALUE);
+        Assert.assertEquals(2, summaries.size());
+    }
+
+    @Test
+    public void testAppender() throws Exception {
+        CloudWatchAppender appender = CloudWatchAppender.newBuilder()
+                                                        .setName("dedup")
+                                                        .setGroup("dedup/group")
+                                                        .setStreamPrefix("dedup")
+                                                        .setTransport("local")
+                                                        .setCapacity(1000)
+                                                        .setSpan(1)
+                                                        .setRequestRate(0.0)
+                                                        .setDedupWindow(60000L)
+                                                        .setLayout(PatternLayout.newBuilder()
+                                                                                .withPattern("%msg")
+                                                                                .withCharset(StandardCharsets.UTF_8)
+                                                                                .build())
+                                                        .build();
+        appender.start();
+        long time = System.currentTimeMillis();
+        while ((appender.getStream() == null) && (System.currentTimeMillis() - time < 10000L)) {
+            Thread.sleep(10L);
+        }
+        for (int i = 0; i < 1000; ++i) {
+            appender.append(event("test", Level.ERROR, "connection {} refused", System.currentTimeMillis()));
+        }
+        appender.stop();
+        List<InputLogEvent> events = LocalTransport.getInstance().getEvents("dedup/group", appender.getStream());
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals("connection 0 refused".length(), events.get(0).getMessage().length());
+        Assert.assertEquals("[REPEATED 999 TIMES]: connection {} refused", events.get(1).getMessage());
+        Assert.assertEquals(999L, appender.getMetrics().getRepeatedEvents());
+    }
+
+    private static LogEvent event(String logger, Level level, String format, long time) {
+        return Log4jLogEvent.newBuilder()
+                            .setLoggerName(logger)
+                            .setLevel(level)
+                            .setTimeMillis(time)
+                            .setMessage(new ParameterizedMessage(format, time % 10L))
+                            .build();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.model.InputLogEvent;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Checks that the {@code disruptor} queue delivers appended events in timestamp order with every wait strategy, and
+ * that it holds a batch until the flush interval has elapsed and then sends it while the stream is idle.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class DisruptorQueueTest {
+    public DisruptorQueueTest() {
+    }
+
+    @Test
+    public void testWaitStrategy() throws Exception {
+        for (String s : new String[]{"Block", "Timeout", "Sleep", "Yield", "Busyspin"}) {
+            Assert.assertNotNull(DisruptorQueue.createWaitStrategy(s));
+        }
+        try {
+            DisruptorQueue.createWaitStrategy("Spin");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void testAppender() throws Exception {
+        for (String s : new String[]{"Block", "Timeout", "Sleep", "Yield"}) {
+            CloudWatchAppender appender = CloudWatchAppender.newBuilder()
+                                                            .setName("disruptor")
+                                                            .setGroup("disruptor/group")
+                                                            .setStreamPrefix(s)
+                                                            .setTransport("local")
+                                                            .setCapacity(1000)
+                                                            .setSpan(1)
+                                                            .setRequestRate(0.0)
+                                                            .setQueue("disruptor")
+                                                            .setWaitStrategy(s)
+                                                            .setLayout(PatternLayout.newBuilder()
+                                                                                    .withPattern("%msg")
+                                                                                    .withCharset(StandardCharsets.UTF_8)
+                                                                                    .build())
+                                                            .build();
+            Assert.assertEquals("disruptor", appender.getQueue());
+            appender.start();
+            long time = System.currentTimeMillis();
+            while ((appender.getStream() == null) && (System.currentTimeMillis() - time < 10000L)) {
+                Thread.sleep(10L);
+            }
+            for (int i = 0; i < 5000; ++i) {
+                appender.append(Log4jLogEvent.newBuilder()
+                                             .setLoggerName("test")
+                                             .setLevel(Level.INFO)
+                                             .setTimeMillis(System.currentTimeMillis())
+                                             .setMessage(new SimpleMessage(String.format("event %d", i)))
+                                             .build());
+            }
+            appender.stop();
+            List<InputLogEvent> events = LocalTransport.getInstance().getEvents("disruptor/group",
+                                                                                appender.getStream());
+            long count = 0L;
+            for (int i = 0; i < events.size(); ++i) {
+                if (i > 0) {
+                    Assert.assertTrue(events.get(i - 1).getTimestamp() <= events.get(i).getTimestamp());
+                }
+                if (!events.get(i).getMessage().startsWith("[EVENTS_LOST]")) {
+                    ++count;
+                }
+            }
+            Assert.assertEquals(5000L - appender.getMetrics().getDroppedEvents(), count);
+            Assert.assertEquals(appender.getMetrics().getAppendedEvents(), count);
+        }
+    }
+
+    @Test
+    public void testHeld() throws Exception {
+        CloudWatchAppender appender = CloudWatchAppender.newBuilder()
+                                                        .setName("disruptor")
+                                                        .setGroup("disruptor/group")
+                                                        .setStreamPrefix("held")
+                                                        .setTransport("local")
+                                                        .setCapacity(1000)
+                                                        .setSpan(1)
+                                                        .setAdaptiveFlush(false)
+                                                        .setRequestRate(0.0)
+                                                        .setQueue("disruptor")
+                                                        .setWaitStrategy("Block")
+                                                        .setLayout(PatternLayout.newBuilder()
+                                                                                .withPattern("%msg")
+                                                                                .withCharset(StandardCharsets.UTF_8)
+                                                                                .build())
+                                                        .build();
+        appender.start();
+        try {
+            long time = System.currentTimeMillis();
+            while ((appender.getStream() == null) && (System.currentTimeMillis() - time < 10000L)) {
+                Thread.sleep(10L);
+            }
+            Thread.sleep(1100L);
+            for (int i = 0; i < 10; ++i) {
+                appender.append(Log4jLogEvent.newBuilder()
+                                             .setLoggerName("test")
+                                             .setLevel(Level.INFO)
+                                             .setTimeMillis(System.currentTimeMillis())
+                                             .setMessage(new SimpleMessage(String.format("event %d", i)))
+                                             .build());
+                Thread.sleep(10L);
+            }
+            String stream = appender.getStream();
+            Assert.assertTrue(LocalTransport.getInstance().getEventCount("disruptor/group", stream) < 10L);
+            time = System.currentTimeMillis();
+            while ((LocalTransport.getInstance().getEventCount("disruptor/group", stream) < 10L)
+                    && (System.currentTimeMillis() - time < 5000L)) {
+                Thread.sleep(10L);
+            }
+            Assert.assertEquals(10L, LocalTransport.getInstance().getEventCount("disruptor/group", stream));
+        } finally {
+            appender.stop();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks that {@link EventEncoder} truncates on a character boundary whatever the charset of the layout. Its cost
+ * against the previous {@code toByteArray} / {@code new String} / {@code substring} path is measured by
+ * {@code EncodeBenchmark} of the benchmarks module.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class EventEncoderTest {
+    public EventEncoderTest() {
+    }
+
+    @Test
+    public void testTruncation() throws Exception {
+        PatternLayout layout = PatternLayout.newBuilder()
+                                            .withPattern("%msg")
+                                            .withCharset(StandardCharsets.UTF_8)
+                                            .build();
+        PatternLayout utf16 = PatternLayout.newBuilder()
+                                           .withPattern("%msg")
+                                           .withCharset(StandardCharsets.UTF_16)
+                                           .build();
+        String msg = "aé你🌍";
+        for (int length = 1; length <= 16; ++length) {
+            byte[] b = new EventEncoder(length).encode(layout, event(msg + msg));
+            String s = new String(b, StandardCharsets.UTF_8);
+            Assert.assertTrue(b.length <= length);
+            Assert.assertTrue((msg + msg).startsWith(s));
+            Assert.assertArrayEquals(s.getBytes(StandardCharsets.UTF_8), b);
+            Assert.assertArrayEquals(b, new EventEncoder(length).encode(utf16, event(msg + msg)));
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 4096; ++i) {
+            sb.append("aé你");
+        }
+        Assert.assertEquals(4095, new EventEncoder(4096).encode(layout, event(sb.toString())).length);
+        Assert.assertEquals(sb.toString(), new String(new EventEncoder(65536).encode(layout, event(sb.toString())),
+                                                      StandardCharsets.UTF_8));
+    }
+
+    private static LogEvent event(String message) {
+        return Log4jLogEvent.newBuilder()
+                            .setLoggerName("test")
+                            .setLevel(Level.INFO)
+                            .setThreadName("main")
+                            .setTimeMillis(System.currentTimeMillis())
+                            .setMessage(new SimpleMessage(message))
+                            .build();
+    }
+}
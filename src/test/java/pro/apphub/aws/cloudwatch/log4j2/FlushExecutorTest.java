@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checks that appenders share the flush threads of {@link FlushExecutor} and the client of {@link Clients}, that
+ * both are released with the last appender, that a client handed out for several keys is released by its key, and
+ * that neither a flooded appender nor one whose requests are stuck holds back a quiet one.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class FlushExecutorTest {
+    private static final int APPENDERS = 8;
+
+    public FlushExecutorTest() {
+    }
+
+    @Test
+    public void test() throws Exception {
+        final CloudWatchAppender[] appenders = new CloudWatchAppender[APPENDERS];
+        for (int i = 0; i < APPENDERS; ++i) {
+            appenders[i] = appender(String.format("shared-%d", i));
+            appenders[i].start();
+        }
+        for (CloudWatchAppender a : appenders) {
+            long time = System.currentTimeMillis();
+            while ((a.getStream() == null) && (System.currentTimeMillis() - time < 10000L)) {
+                Thread.sleep(10L);
+            }
+        }
+        Assert.assertEquals(FlushExecutor.DEFAULT_THREADS, flushThreads());
+        Assert.assertEquals(1, Clients.size());
+
+        final AtomicBoolean flooding = new AtomicBoolean(true);
+        Thread flood = new Thread("flood") {
+            @Override
+            public void run() {
+                int i = 0;
+                while (flooding.get()) {
+                    appenders[0].append(event(String.format("flood %d", i++)));
+                }
+            }
+        };
+        flood.start();
+        try {
+            for (int i = 0; i < 100; ++i) {
+                appenders[1].append(event(String.format("quiet %d", i)));
+            }
+            long time = System.currentTimeMillis();
+            LocalAWSLogs logs = LocalTransport.getInstance();
+            String stream = appenders[1].getStream();
+            while ((logs.getEventCount("shared/group", stream) < 100L) && (System.currentTimeMillis() - time < 5000L)) {
+                Thread.sleep(10L);
+            }
+            Assert.assertEquals(100L, logs.getEventCount("shared/group", stream));
+        } finally {
+            flooding.set(false);
+            flood.join();
+        }
+
+        for (CloudWatchAppender a : appenders) {
+            a.stop();
+        }
+        Assert.assertEquals(0, flushThreads());
+        Assert.assertEquals(0, Clients.size());
+        Assert.assertTrue(appenders[0].getMetrics().getAppendedEvents() > 0L);
+    }
+
+    @Test
+    public void testStalled() throws Exception {
+        System.setProperty("aws.cloudwatch.flush.threads", "1");
+        final CloudWatchAppender stalled;
+        CloudWatchAppender quiet;
+        try {
+            stalled = appender("stalled", "stalled/group", HeldTransport.class.getName(), 1);
+            quiet = appender("quiet", "quiet/group", HeldTransport.class.getName(), 4);
+            stalled.start();
+            quiet.start();
+        } finally {
+            System.clearProperty("aws.cloudwatch.flush.threads");
+        }
+        Assert.assertEquals(1, flushThreads());
+        HeldTransport.LOGS.hold("stalled/group");
+        long time = System.currentTimeMillis();
+        while (((stalled.getStream() == null) || (quiet.getStream() == null))
+                && (System.currentTimeMillis() - time < 10000L)) {
+            Thread.sleep(10L);
+        }
+
+        final AtomicBoolean flooding = new AtomicBoolean(true);
+        final String payload = new String(new char[4000]).replace('\0', 'x');
+        Thread flood = new Thread("flood") {
+            @Override
+            public void run() {
+                while (flooding.get()) {
+                    stalled.append(event(payload));
+                }
+            }
+        };
+        flood.start();
+        try {
+            Thread.sleep(1500L);
+            for (int i = 0; i < 100; ++i) {
+                quiet.append(event(String.format("quiet %d", i)));
+            }
+            time = System.currentTimeMillis();
+            String stream = quiet.getStream();
+            while ((HeldTransport.LOGS.getEventCount("quiet/group", stream) < 100L)
+                    && (System.currentTimeMillis() - time < 5000L)) {
+                Thread.sleep(10L);
+            }
+            Assert.assertEquals(100L, HeldTransport.LOGS.getEventCount("quiet/group", stream));
+            Assert.assertEquals(0L, HeldTransport.LOGS.getEventCount("stalled/group", stalled.getStream()));
+        } finally {
+            flooding.set(false);
+            flood.join();
+            HeldTransport.LOGS.release("stalled/group");
+            stalled.stop();
+            quiet.stop();
+        }
+        Assert.assertEquals(0, flushThreads());
+    }
+
+    @Test
+    public void testClients() throws Exception {
+        Clients.Key key1 = new Clients.Key(HeldTransport.class.getName(), "region-1", null, null, "none");
+        Clients.Key key2 = new Clients.Key(HeldTransport.class.getName(), "region-2", null, null, "none");
+        Assert.assertSame(HeldTransport.LOGS, Clients.acquire(key1));
+        Assert.assertSame(HeldTransport.LOGS, Clients.acquire(key1));
+        Assert.assertSame(HeldTransport.LOGS, Clients.acquire(key2));
+        Assert.assertEquals(2, Clients.size());
+        Clients.release(key2);
+        Assert.assertEquals(1, Clients.size());
+        Clients.release(key1);
+        Assert.assertEquals(1, Clients.size());
+        Clients.release(key1);
+        Assert.assertEquals(0, Clients.size());
+    }
+
+    private static CloudWatchAppender appender(String name) {
+        return appender(name, "shared/group", "local", 4);
+    }
+
+    private static CloudWatchAppender appender(String name, String group, String transport, int batches) {
+        return CloudWatchAppender.newBuilder()
+                                 .setName(name)
+                                 .setGroup(group)
+                                 .setStreamPrefix(name)
+                                 .setTransport(transport)
+                                 .setCapacity(1000)
+                                 .setBatches(batches)
+                                 .setSpan(1)
+                                 .setRequestRate(0.0)
+                                 .setLayout(PatternLayout.newBuilder()
+                                                         .withPattern("%msg")
+                                                         .withCharset(StandardCharsets.UTF_8)
+                                                         .build())
+                                 .build();
+    }
+
+    private static Log4jLogEvent event(String message) {
+        return Log4jLogEvent.newBuilder()
+                            .setLoggerName("test")
+                            .setLevel(Level.INFO)
+                            .setTimeMillis(System.currentTimeMillis())
+                            .setMessage(new SimpleMessage(message))
+                            .build();
+    }
+
+    private static int flushThreads() {
+        int n = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.isAlive() && t.getName().startsWith("aws-cloudwatch-log4j2-flush-")) {
+                ++n;
+            }
+        }
+        return n;
+    }
+}
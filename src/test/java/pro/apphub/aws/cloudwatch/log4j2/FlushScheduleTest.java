@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks the intervals chosen by {@link FlushSchedule} and the due time of {@link FlushWait}: the interval while
+ * both buffers have space, the minimum interval once one is full, and at once when both are.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class FlushScheduleTest {
+    public FlushScheduleTest() {
+    }
+
+    @Test
+    public void testInterval() throws Exception {
+        FlushSchedule s = new FlushSchedule(100L, 60000L, true, 100000);
+        Assert.assertEquals(60000L, s.getInterval());
+        Assert.assertEquals(1000L, s.update(10000, 10000L * 100L, 1000L));
+        Assert.assertEquals(10000.0, s.getEventRate(), 0.001);
+
+        s = new FlushSchedule(100L, 60000L, true, 100000);
+        Assert.assertEquals(1048L, s.update(1000, 1000L * 1000L, 1000L));
+
+        s = new FlushSchedule(100L, 60000L, true, 1000);
+        Assert.assertEquals(1000L, s.update(1000, 1000L * 100L, 1000L));
+    }
+
+    @Test
+    public void testBounds() throws Exception {
+        FlushSchedule s = new FlushSchedule(200L, 5000L, true, 100000);
+        Assert.assertEquals(200L, s.update(1000000, 1000000L * 100L, 1000L));
+        s = new FlushSchedule(200L, 5000L, true, 100000);
+        Assert.assertEquals(5000L, s.update(10, 1000L, 1000L));
+        s = new FlushSchedule(200L, 5000L, true, 100000);
+        Assert.assertEquals(5000L, s.update(0, 0L, 1000L));
+        s = new FlushSchedule(200L, 5000L, false, 100000);
+        Assert.assertEquals(5000L, s.update(1000000, 1000000L * 100L, 1000L));
+        Assert.assertEquals(0.0, s.getEventRate(), 0.0);
+    }
+
+    @Test
+    public void testDue() throws Exception {
+        Buffer buffer1 = new Buffer(64);
+        Buffer buffer2 = new Buffer(64);
+        FlushWait flushWait = new FlushWait(new FlushSchedule(200L, 60000L, true, 64));
+        long before = System.currentTimeMillis();
+        flushWait.mark();
+        long after = System.currentTimeMillis();
+        long due = flushWait.due(buffer1, buffer2);
+        Assert.assertTrue((due >= before + 60000L) && (due <= after + 60000L));
+        fill(buffer1, flushWait);
+        due = flushWait.due(buffer1, buffer2);
+        Assert.assertTrue((due >= before + 200L) && (due <= after + 200L));
+        fill(buffer2, flushWait);
+        due = flushWait.due(buffer1, buffer2);
+        Assert.assertTrue((due >= before) && (due <= after));
+    }
+
+    private static void fill(Buffer buffer, FlushWait flushWait) {
+        int i = 0;
+        while (buffer.append(new Event(System.currentTimeMillis(), String.format("event %d", i++)), flushWait)) {
+        }
+    }
+}
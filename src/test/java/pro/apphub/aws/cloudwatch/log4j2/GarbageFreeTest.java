@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.core.util.Constants;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks that {@link CloudWatchAppender#append} allocates nothing per event once the buffer slots and thread-local
+ * encoder have grown to the message size, whether the event is buffered or dropped. The requests are held while a
+ * cycle is appended, so exactly one buffer is flushed, the other is filled and the rest of the events are dropped.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class GarbageFreeTest {
+    private static final String GROUP = "garbage-free/group";
+    private static final int CAPACITY = 10000;
+    private static final int CYCLES = 3;
+    private static final long BOUND = 1024L;
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public GarbageFreeTest() {
+    }
+
+    @Test
+    public void test() throws Exception {
+        Assume.assumeTrue(Constants.ENABLE_THREADLOCALS);
+        PatternLayout layout = PatternLayout.newBuilder()
+                                            .withPattern("%-5level %logger - %msg%n")
+                                            .withCharset(StandardCharsets.UTF_8)
+                                            .build();
+        CloudWatchAppender appender = CloudWatchAppender.newBuilder()
+                                                        .setName("garbage-free")
+                                                        .setGroup(GROUP)
+                                                        .setStreamPrefix("garbage-free")
+                                                        .setTransport(HeldTransport.class.getName())
+                                                        .setCapacity(CAPACITY)
+                                                        .setBatches(1)
+                                                        .setRequestRate(0.0)
+                                                        .setAdaptiveFlush(false)
+                                                        .setLayout(layout)
+                                                        .build();
+        appender.start();
+        try {
+            long time = System.currentTimeMillis();
+            while ((appender.getStream() == null) && (System.currentTimeMillis() - time < 10000L)) {
+                Thread.sleep(10L);
+            }
+            LogEvent event = Log4jLogEvent.newBuilder()
+                                          .setLoggerName("test")
+                                          .setLevel(Level.INFO)
+                                          .setThreadName("main")
+                                          .setTimeMillis(System.currentTimeMillis())
+                                          .setMessage(new SimpleMessage("Request processed in 42 ms"))
+                                          .build();
+            CloudWatchAppenderMetricsMBean metrics = appender.getMetrics();
+            for (int i = 0; i < CYCLES; ++i) {
+                hold(appender, event, metrics);
+                append(appender, event, CAPACITY);
+                append(appender, event, CAPACITY);
+                release(metrics);
+            }
+
+            hold(appender, event, metrics);
+            long dropped = metrics.getDroppedEvents();
+            long before = allocated();
+            append(appender, event, CAPACITY);
+            long after = allocated();
+            Assert.assertEquals(2L * CAPACITY, metrics.getBufferedEvents());
+            Assert.assertEquals(dropped, metrics.getDroppedEvents());
+            Assert.assertTrue(String.format("buffered: %d bytes", after - before), after - before < BOUND);
+
+            before = allocated();
+            append(appender, event, CAPACITY);
+            after = allocated();
+            Assert.assertEquals(dropped + CAPACITY, metrics.getDroppedEvents());
+            Assert.assertTrue(String.format("dropped: %d bytes", after - before), after - before < BOUND);
+            release(metrics);
+        } finally {
+            HeldTransport.LOGS.release(GROUP);
+            appender.stop();
+        }
+    }
+
+    private static void hold(CloudWatchAppender appender, LogEvent event, CloudWatchAppenderMetricsMBean metrics)
+            throws Exception {
+        HeldTransport.LOGS.hold(GROUP);
+        append(appender, event, 2 * CAPACITY);
+        long time = System.currentTimeMillis();
+        while ((metrics.getBufferedEvents() > CAPACITY) && (System.currentTimeMillis() - time < 10000L)) {
+            Thread.sleep(10L);
+        }
+        Assert.assertEquals(CAPACITY, metrics.getBufferedEvents());
+    }
+
+    private static void release(CloudWatchAppenderMetricsMBean metrics) throws Exception {
+        HeldTransport.LOGS.release(GROUP);
+        long time = System.currentTimeMillis();
+        while (((metrics.getSentEvents() < metrics.getAppendedEvents()) || (metrics.getBufferedEvents() > 0L))
+                && (System.currentTimeMillis() - time < 10000L)) {
+            Thread.sleep(10L);
+        }
+        Assert.assertTrue(metrics.getSentEvents() >= metrics.getAppendedEvents());
+        Assert.assertEquals(0L, metrics.getBufferedEvents());
+    }
+
+    private static void append(CloudWatchAppender appender, LogEvent event, int count) {
+        for (int i = 0; i < count; ++i) {
+            appender.append(event);
+        }
+    }
+
+    private static long allocated() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
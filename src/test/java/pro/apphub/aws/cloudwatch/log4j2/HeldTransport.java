@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.AWSLogs;
+
+/**
+ * Hands out one {@link LocalAWSLogs} without throttling, whose groups the tests {@link LocalAWSLogs#hold hold} to
+ * stall their senders.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public final class HeldTransport implements Transport {
+    public static final LocalAWSLogs LOGS = new LocalAWSLogs(0L, 0.0, 1000000);
+
+    public HeldTransport() {
+    }
+
+    @Override
+    public AWSLogs create(String region, String access, String secret) {
+        return LOGS;
+    }
+}
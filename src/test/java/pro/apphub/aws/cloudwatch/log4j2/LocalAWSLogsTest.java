@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.model.AWSLogsException;
+import com.amazonaws.services.logs.model.CreateLogGroupRequest;
+import com.amazonaws.services.logs.model.CreateLogStreamRequest;
+import com.amazonaws.services.logs.model.DataAlreadyAcceptedException;
+import com.amazonaws.services.logs.model.DescribeLogStreamsRequest;
+import com.amazonaws.services.logs.model.InputLogEvent;
+import com.amazonaws.services.logs.model.InvalidParameterException;
+import com.amazonaws.services.logs.model.InvalidSequenceTokenException;
+import com.amazonaws.services.logs.model.PutLogEventsRequest;
+import com.amazonaws.services.logs.model.ResourceNotFoundException;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks the service semantics of {@link LocalAWSLogs} and runs an appender with the {@code local} transport.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class LocalAWSLogsTest {
+    public LocalAWSLogsTest() {
+    }
+
+    @Test
+    public void testSequenceToken() throws Exception {
+        LocalAWSLogs logs = logs(0.0);
+        List<InputLogEvent> events = events(0L, 10);
+        String token = logs.putLogEvents(new PutLogEventsRequest("group", "stream", events)).getNextSequenceToken();
+        Assert.assertEquals(token, logs.describeLogStreams(new DescribeLogStreamsRequest("group"))
+                                       .getLogStreams().get(0).getUploadSequenceToken());
+        try {
+            logs.putLogEvents(new PutLogEventsRequest("group", "stream", events(10L, 10)));
+            Assert.fail();
+        } catch (InvalidSequenceTokenException e) {
+            Assert.assertEquals(token, e.getExpectedSequenceToken());
+        }
+        try {
+            logs.putLogEvents(new PutLogEventsRequest("group", "stream", events).withSequenceToken(null));
+            Assert.fail();
+        } catch (DataAlreadyAcceptedException e) {
+            Assert.assertEquals(token, e.getExpectedSequenceToken());
+        }
+        logs.putLogEvents(new PutLogEventsRequest("group", "stream", events(10L, 10)).withSequenceToken(token));
+        Assert.assertEquals(20L, logs.getEventCount("group", "stream"));
+        try {
+            logs.putLogEvents(new PutLogEventsRequest("group", "missing", events));
+            Assert.fail();
+        } catch (ResourceNotFoundException e) {
+        }
+    }
+
+    @Test
+    public void testLimits() throws Exception {
+        LocalAWSLogs logs = logs(0.0);
+        assertInvalid(logs, events(0L, Buffer.MAX_BATCH_COUNT + 1));
+        char[] c = new char[LocalAWSLogs.MAX_EVENT_SIZE];
+        Arrays.fill(c, 'x');
+        assertInvalid(logs, Arrays.asList(new InputLogEvent().withTimestamp(0L).withMessage(new String(c))));
+        List<InputLogEvent> events = new ArrayList<>();
+        String m = new String(c, 0, LocalAWSLogs.MAX_EVENT_SIZE - Event.OVERHEAD);
+        for (int i = 0; i < 5; ++i) {
+            events.add(new InputLogEvent().withTimestamp((long) i).withMessage(m));
+        }
+        assertInvalid(logs, events);
+        assertInvalid(logs, Arrays.asList(new InputLogEvent().withTimestamp(1L).withMessage("b"),
+                                          new InputLogEvent().withTimestamp(0L).withMessage("a")));
+        assertInvalid(logs, Arrays.asList(new InputLogEvent().withTimestamp(0L).withMessage("a"),
+                                          new InputLogEvent().withTimestamp(Spill.MAX_BATCH_SPAN + 1L)
+                                                             .withMessage("b")));
+        logs.putLogEvents(new PutLogEventsRequest("group", "stream", events.subList(0, 4)));
+        Assert.assertEquals(4L, logs.getEventCount("group", "stream"));
+    }
+
+    @Test
+    public void testThrottling() throws Exception {
+        LocalAWSLogs logs = logs(5.0);
+        String token = null;
+        int throttled = 0;
+        for (int i = 0; i < 10; ++i) {
+            try {
+                token = logs.putLogEvents(new PutLogEventsRequest("group", "stream", events(i, 1))
+                                                  .withSequenceToken(token)).getNextSequenceToken();
+            } catch (AWSLogsException e) {
+                Assert.assertEquals("ThrottlingException", e.getErrorCode());
+                Assert.assertTrue(Retry.isRetryable(e));
+                ++throttled;
+            }
+        }
+        Assert.assertTrue(throttled >= 4);
+        Assert.assertEquals(throttled, logs.getThrottledCount("group", "stream"));
+    }
+
+    @Test
+    public void testHold() throws Exception {
+        final LocalAWSLogs logs = logs(0.0);
+        logs.hold("group");
+        Thread put = new Thread("put") {
+            @Override
+            public void run() {
+                logs.putLogEvents(new PutLogEventsRequest("group", "stream", events(0L, 10)));
+            }
+        };
+        put.start();
+        put.join(200L);
+        Assert.assertTrue(put.isAlive());
+        Assert.assertEquals(0L, logs.getEventCount("group", "stream"));
+        logs.release("group");
+        put.join(10000L);
+        Assert.assertFalse(put.isAlive());
+        Assert.assertEquals(10L, logs.getEventCount("group", "stream"));
+    }
+
+    @Test
+    public void testAppender() throws Exception {
+        CloudWatchAppender appender = CloudWatchAppender.newBuilder()
+                                                        .setName("local")
+                                                        .setGroup("local/group")
+                                                        .setStreamPrefix("test")
+                                                        .setTransport("local")
+                                                        .setCapacity(1000)
+                                                        .setSpan(1)
+                                                        .setShards(2)
+                                                        .setRequestRate(0.0)
+                                                        .setLayout(PatternLayout.newBuilder()
+                                                                                .withPattern("%msg")
+                                                                                .withCharset(StandardCharsets.UTF_8)
+                                                                                .build())
+                                                        .build();
+        appender.start();
+        long time = System.currentTimeMillis();
+        while ((appender.getStream() == null) && (System.currentTimeMillis() - time < 10000L)) {
+            Thread.sleep(10L);
+        }
+        for (int i = 0; i < 5000; ++i) {
+            appender.append(Log4jLogEvent.newBuilder()
+                                         .setLoggerName("test")
+                                         .setLevel(Level.INFO)
+                                         .setTimeMillis(System.currentTimeMillis())
+                                         .setMessage(new SimpleMessage(String.format("event %d", i)))
+                                         .build());
+        }
+        appender.stop();
+        LocalAWSLogs logs = LocalTransport.getInstance();
+        long count = 0L;
+        for (int i = 0; i < 2; ++i) {
+            for (InputLogEvent e : logs.getEvents("local/group", String.format("%s-%d", appender.getStream(), i))) {
+                if (!e.getMessage().startsWith("[EVENTS_LOST]")) {
+                    ++count;
+                }
+            }
+        }
+        Assert.assertEquals(5000L - appender.getMetrics().getDroppedEvents(), count);
+        Assert.assertEquals(5000L,
+                            appender.getMetrics().getAppendedEvents() + appender.getMetrics().getDroppedEvents());
+    }
+
+    private static LocalAWSLogs logs(double rate) {
+        LocalAWSLogs logs = new LocalAWSLogs(0L, rate, 1000);
+        logs.createLogGroup(new CreateLogGroupRequest("group"));
+        logs.createLogStream(new CreateLogStreamRequest("group", "stream"));
+        return logs;
+    }
+
+    private static List<InputLogEvent> events(long from, int count) {
+        List<InputLogEvent> events = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            events.add(new InputLogEvent().withTimestamp(from + i).withMessage(String.format("event %d", from + i)));
+        }
+        return events;
+    }
+
+    private static void assertInvalid(LocalAWSLogs logs, List<InputLogEvent> events) {
+        try {
+            logs.putLogEvents(new PutLogEventsRequest("group", "stream", events));
+            Assert.fail();
+        } catch (InvalidParameterException e) {
+        }
+    }
+}
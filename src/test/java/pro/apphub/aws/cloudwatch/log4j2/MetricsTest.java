@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.logs.AbstractAWSLogs;
+import com.amazonaws.services.logs.model.DataAlreadyAcceptedException;
+import com.amazonaws.services.logs.model.InputLogEvent;
+import com.amazonaws.services.logs.model.PutLogEventsRequest;
+import com.amazonaws.services.logs.model.PutLogEventsResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Checks {@link Histogram} percentiles, the batch sizes, retries and already accepted batches recorded by
+ * {@link Sender} and the {@link Metrics} attributes seen through JMX.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class MetricsTest {
+    public MetricsTest() {
+    }
+
+    @Test
+    public void testHistogram() throws Exception {
+        Histogram h = new Histogram();
+        for (long v = 1L; v <= 1000L; ++v) {
+            h.record(v);
+        }
+        Assert.assertEquals(1000L, h.getCount());
+        assertNear(500L, h.percentile(50.0));
+        assertNear(990L, h.percentile(99.0));
+        assertNear(1000L, h.percentile(100.0));
+        h.reset();
+        Assert.assertEquals(0L, h.percentile(50.0));
+    }
+
+    @Test
+    public void testSize() throws Exception {
+        String[] messages = {"", "event", "aé你🌍", "\uD83C", "x\uDF0Dy"};
+        for (String m : messages) {
+            Assert.assertEquals(m, m.getBytes(StandardCharsets.UTF_8).length + Event.OVERHEAD, Event.size(m));
+        }
+    }
+
+    @Test
+    public void testSender() throws Exception {
+        final AtomicInteger calls = new AtomicInteger(0);
+        AbstractAWSLogs client = new AbstractAWSLogs() {
+            @Override
+            public PutLogEventsResult putLogEvents(PutLogEventsRequest request) {
+                if (calls.incrementAndGet() == 1) {
+                    AmazonServiceException e = new AmazonServiceException("Rate exceeded");
+                    e.setErrorCode("ThrottlingException");
+                    throw e;
+                }
+                return new PutLogEventsResult();
+            }
+        };
+        Metrics metrics = new Metrics();
+        Sender sender = new Sender("test", client, "group", "stream", null, 1, metrics, null,
+                                   new Retry(10000L, 10L, 100L), null);
+        sender.start();
+        Batch batch = sender.acquire();
+        for (int i = 0; i < 10; ++i) {
+            batch.add(new InputLogEvent().withTimestamp((long) i).withMessage("event"));
+        }
+        batch.bytes = 10L * (5 + Event.OVERHEAD);
+        sender.send(batch);
+        sender.stop();
+        Assert.assertEquals(2L, metrics.getRequests());
+        Assert.assertEquals(1L, metrics.getRetries());
+        Assert.assertEquals(0L, metrics.getFailedRequests());
+        Assert.assertEquals(1L, metrics.getSentBatches());
+        Assert.assertEquals(10L, metrics.getSentEvents());
+        Assert.assertEquals(10L * (5 + Event.OVERHEAD), metrics.getSentBytes());
+        Assert.assertEquals(10.0, metrics.getEventsPerBatch(), 0.0);
+    }
+
+    @Test
+    public void testAlreadyAccepted() throws Exception {
+        AbstractAWSLogs client = new AbstractAWSLogs() {
+            @Override
+            public PutLogEventsResult putLogEvents(PutLogEventsRequest request) {
+                DataAlreadyAcceptedException e = new DataAlreadyAcceptedException("Already accepted");
+                e.setExpectedSequenceToken("token");
+                throw e;
+            }
+        };
+        Metrics metrics = new Metrics();
+        Sender sender = new Sender("test", client, "group", "stream", null, 1, metrics, null, new Retry(0L), null);
+        sender.start();
+        Batch batch = sender.acquire();
+        for (int i = 0; i < 10; ++i) {
+            batch.add(new InputLogEvent().withTimestamp((long) i).withMessage("event"));
+        }
+        sender.send(batch);
+        sender.stop();
+        Assert.assertEquals(1L, metrics.getRequests());
+        Assert.assertEquals(10L, metrics.getAlreadyAcceptedEvents());
+        Assert.assertEquals(0L, metrics.getDroppedEvents());
+        Assert.assertEquals(0L, metrics.getSentEvents());
+        Assert.assertEquals(0L, metrics.takeLost());
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.append();
+        metrics.append();
+        metrics.drop(1L);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName on = new ObjectName("pro.apphub.aws.cloudwatch.log4j2:type=CloudWatchAppender,name=test");
+        server.registerMBean(new StandardMBean(metrics, CloudWatchAppenderMetricsMBean.class), on);
+        try {
+            Assert.assertEquals(2L, server.getAttribute(on, "AppendedEvents"));
+            Assert.assertEquals(1L, server.getAttribute(on, "DroppedEvents"));
+            server.invoke(on, "reset", new Object[0], new String[0]);
+            Assert.assertEquals(0L, server.getAttribute(on, "AppendedEvents"));
+            Assert.assertEquals(1L, metrics.takeLost());
+        } finally {
+            server.unregisterMBean(on);
+        }
+    }
+
+    private static void assertNear(long expected, long actual) {
+        Assert.assertTrue(String.format("%d ~ %d", expected, actual),
+                          (actual >= expected) && (actual <= expected + expected / 8));
+    }
+}
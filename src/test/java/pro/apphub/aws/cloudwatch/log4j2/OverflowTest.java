@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.AbstractAWSLogs;
+import com.amazonaws.services.logs.model.InputLogEvent;
+import com.amazonaws.services.logs.model.PutLogEventsRequest;
+import com.amazonaws.services.logs.model.PutLogEventsResult;
+import org.apache.logging.log4j.Level;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checks every {@link OverflowPolicy} of {@link Shard} while its sender is stuck in a request.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class OverflowTest {
+    private static final int CAPACITY = 100;
+
+    private final AtomicBoolean enabled = new AtomicBoolean(true);
+    private final CountDownLatch released = new CountDownLatch(1);
+    private final List<InputLogEvent> events = new ArrayList<>();
+    private final Metrics metrics = new Metrics();
+
+    public OverflowTest() {
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        Assert.assertEquals("BLOCK(1000)", OverflowPolicy.parse("block").toString());
+        Assert.assertEquals("BLOCK(250)", OverflowPolicy.parse("BLOCK( 250 )").toString());
+        Assert.assertEquals("DROP_OLDEST", OverflowPolicy.parse("DROP_OLDEST").toString());
+        Assert.assertEquals("SAMPLE(10,WARN)", OverflowPolicy.parse("SAMPLE").toString());
+        Assert.assertEquals("SAMPLE(100,ERROR)", OverflowPolicy.parse("SAMPLE(100, ERROR)").toString());
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+        Shard shard = shard("DROP_NEWEST");
+        int accepted = append(shard, 1000, Level.INFO);
+        release(shard);
+        Assert.assertEquals(1000 - accepted, metrics.getDroppedNewestEvents());
+        Assert.assertEquals(accepted, count());
+        Assert.assertTrue(contains("event 0"));
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        Shard shard = shard("DROP_OLDEST");
+        Assert.assertEquals(1000, append(shard, 1000, Level.INFO));
+        release(shard);
+        Assert.assertTrue(metrics.getDroppedOldestEvents() > 0L);
+        Assert.assertEquals(1000L - metrics.getDroppedOldestEvents(), count());
+        Assert.assertTrue(contains("event 0"));
+        Assert.assertTrue(contains("event 999"));
+    }
+
+    @Test
+    public void testSample() throws Exception {
+        Shard shard = shard("SAMPLE(10,WARN)");
+        for (int i = 0; i < 1000; ++i) {
+            shard.append(new Event(i, String.format("event %d", i)), (i % 50 == 0) ? Level.ERROR : Level.INFO);
+        }
+        release(shard);
+        Assert.assertTrue(metrics.getDroppedSampledEvents() > 0L);
+        Assert.assertEquals(0L, metrics.getDroppedOldestEvents());
+        Assert.assertEquals(1000L - metrics.getDroppedSampledEvents(), count());
+        for (int i = 0; i < 1000; i += 50) {
+            Assert.assertTrue(contains(String.format("event %d", i)));
+        }
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        final Shard shard = shard("BLOCK(10000)");
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                append(shard, 1000, Level.INFO);
+            }
+        };
+        producer.start();
+        Thread.sleep(200L);
+        Assert.assertTrue(producer.isAlive());
+        released.countDown();
+        producer.join();
+        release(shard);
+        Assert.assertEquals(0L, metrics.getDroppedEvents());
+        Assert.assertEquals(1000, count());
+    }
+
+    @Test
+    public void testBlockTimeout() throws Exception {
+        Shard shard = shard("BLOCK(5)");
+        long time = System.currentTimeMillis();
+        int accepted = append(shard, 1000, Level.INFO);
+        Assert.assertTrue(System.currentTimeMillis() - time < 1000L * 5L);
+        release(shard);
+        Assert.assertEquals(1000 - accepted, metrics.getDroppedBlockedEvents());
+        Assert.assertEquals(accepted, count());
+    }
+
+    private Shard shard(String policy) {
+        AbstractAWSLogs client = new AbstractAWSLogs() {
+            @Override
+            public PutLogEventsResult putLogEvents(PutLogEventsRequest request) {
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                }
+                synchronized (events) {
+                    events.addAll(request.getLogEvents());
+                }
+                return new PutLogEventsResult();
+            }
+        };
+        Shard shard = new Shard("test", client, "group", "stream", null, CAPACITY, 0, null,
+                                new FlushSchedule(0L, 60000L, false, CAPACITY), 1, null, new Retry(0L), null,
+                                OverflowPolicy.parse(policy), null, null, enabled, metrics);
+        shard.start();
+        return shard;
+    }
+
+    private static int append(Shard shard, int count, Level level) {
+        int accepted = 0;
+        for (int i = 0; i < count; ++i) {
+            if (shard.append(new Event(i, String.format("event %d", i)), level)) {
+                ++accepted;
+            }
+        }
+        return accepted;
+    }
+
+    private void release(Shard shard) {
+        released.countDown();
+        enabled.set(false);
+        shard.signal();
+        shard.join();
+    }
+
+    private int count() {
+        int c = 0;
+        synchronized (events) {
+            for (InputLogEvent e : events) {
+                if (!e.getMessage().startsWith("[EVENTS_LOST]")) {
+                    ++c;
+                }
+            }
+        }
+        return c;
+    }
+
+    private boolean contains(String message) {
+        Set<String> messages = new HashSet<>();
+        synchronized (events) {
+            for (InputLogEvent e : events) {
+                messages.add(e.getMessage());
+            }
+        }
+        return messages.contains(message);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.model.InputLogEvent;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks the priority lane with a stream whose requests are held until the flood is over: of a DEBUG flood ten
+ * times the buffer capacity, with one ERROR in every hundred events, no ERROR event is lost with a priority share,
+ * and most of them are lost without it.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class PriorityLaneTest {
+    private static final int CAPACITY = 1000;
+    private static final int ERRORS = 100;
+    private static final int DEBUGS = 99;
+
+    public PriorityLaneTest() {
+    }
+
+    @Test
+    public void testLanes() throws Exception {
+        CloudWatchAppender appender = appender("lanes", 0.2);
+        long[] r = run(appender);
+        Assert.assertEquals(ERRORS, r[1]);
+        Assert.assertTrue(r[0] < (long) ERRORS * (DEBUGS + 1));
+        Assert.assertEquals(ERRORS, appender.getMetrics().getPriorityEvents());
+        Assert.assertEquals(0L, appender.getMetrics().getPriorityDroppedEvents());
+        Assert.assertTrue(appender.getMetrics().getNormalDroppedEvents() > 0L);
+    }
+
+    @Test
+    public void testNoLanes() throws Exception {
+        CloudWatchAppender appender = appender("nolanes", 0.0);
+        long[] r = run(appender);
+        Assert.assertTrue(r[1] < ERRORS);
+        Assert.assertTrue(r[0] < (long) ERRORS * (DEBUGS + 1));
+        Assert.assertEquals(0L, appender.getMetrics().getPriorityEvents());
+    }
+
+    private static long[] run(CloudWatchAppender appender) throws Exception {
+        HeldTransport.LOGS.hold(appender.getGroup());
+        appender.start();
+        try {
+            long time = System.currentTimeMillis();
+            while ((appender.getStream() == null) && (System.currentTimeMillis() - time < 10000L)) {
+                Thread.sleep(10L);
+            }
+            for (int e = 0; e < ERRORS; ++e) {
+                appender.append(event(Level.ERROR, String.format("error %d", e)));
+                for (int i = 0; i < DEBUGS; ++i) {
+                    appender.append(event(Level.DEBUG, "debug"));
+                }
+            }
+        } finally {
+            HeldTransport.LOGS.release(appender.getGroup());
+            appender.stop();
+        }
+        long sent = 0L;
+        long errors = 0L;
+        for (InputLogEvent e : HeldTransport.LOGS.getEvents(appender.getGroup(), appender.getStream())) {
+            if (e.getMessage().startsWith("error ")) {
+                ++errors;
+            }
+            if (!e.getMessage().startsWith("[EVENTS_LOST]")) {
+                ++sent;
+            }
+        }
+        return new long[]{sent, errors};
+    }
+
+    private static CloudWatchAppender appender(String group, double share) {
+        return CloudWatchAppender.newBuilder()
+                                 .setName(group)
+                                 .setGroup(group)
+                                 .setTransport(HeldTransport.class.getName())
+                                 .setCapacity(CAPACITY)
+                                 .setBatches(1)
+                                 .setRequestRate(0.0)
+                                 .setPriorityLevel("ERROR")
+                                 .setPriorityShare(share)
+                                 .setLayout(PatternLayout.newBuilder()
+                                                         .withPattern("%msg")
+                                                         .withCharset(StandardCharsets.UTF_8)
+                                                         .build())
+                                 .build();
+    }
+
+    private static Log4jLogEvent event(Level level, String message) {
+        return Log4jLogEvent.newBuilder()
+                            .setLoggerName("test")
+                            .setLevel(level)
+                            .setTimeMillis(System.currentTimeMillis())
+                            .setMessage(new SimpleMessage(message))
+                            .build();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.logs.AbstractAWSLogs;
+import com.amazonaws.services.logs.model.InputLogEvent;
+import com.amazonaws.services.logs.model.InvalidParameterException;
+import com.amazonaws.services.logs.model.PutLogEventsRequest;
+import com.amazonaws.services.logs.model.PutLogEventsResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that {@link Sender} retries throttled batches within the budget, gives up on fatal errors at once,
+ * and that {@link RateLimiter} spaces requests out.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class RetryTest {
+    public RetryTest() {
+    }
+
+    @Test
+    public void testThrottling() throws Exception {
+        AtomicInteger calls = new AtomicInteger(0);
+        Metrics metrics = new Metrics();
+        send(client(calls, 2, throttling()), new Retry(10000L, 10L, 100L), metrics);
+        Assert.assertEquals(3, calls.get());
+        Assert.assertEquals(0L, metrics.getDroppedEvents());
+    }
+
+    @Test
+    public void testFatal() throws Exception {
+        AtomicInteger calls = new AtomicInteger(0);
+        Metrics metrics = new Metrics();
+        send(client(calls, Integer.MAX_VALUE, new InvalidParameterException("invalid")),
+             new Retry(10000L, 10L, 100L), metrics);
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals(10L, metrics.getDroppedEvents());
+    }
+
+    @Test
+    public void testBudget() throws Exception {
+        AtomicInteger calls = new AtomicInteger(0);
+        Metrics metrics = new Metrics();
+        long time = System.currentTimeMillis();
+        send(client(calls, Integer.MAX_VALUE, throttling()), new Retry(500L, 10L, 100L), metrics);
+        Assert.assertTrue(calls.get() > 1);
+        Assert.assertTrue(System.currentTimeMillis() - time < 2000L);
+        Assert.assertEquals(10L, metrics.getDroppedEvents());
+    }
+
+    @Test
+    public void testRateLimiter() throws Exception {
+        RateLimiter limiter = new RateLimiter(20.0);
+        long time = System.nanoTime();
+        for (int i = 0; i < 30; ++i) {
+            limiter.acquire();
+        }
+        long elapsed = (System.nanoTime() - time) / 1000000L;
+        Assert.assertTrue(String.format("elapsed %d ms", elapsed), elapsed >= 450L);
+    }
+
+    private static void send(AbstractAWSLogs client, Retry retry, Metrics metrics) {
+        Sender sender = new Sender("test", client, "group", "stream", null, 1, metrics, null, retry, null);
+        sender.start();
+        Batch batch = sender.acquire();
+        for (int i = 0; i < 10; ++i) {
+            batch.add(new InputLogEvent().withTimestamp((long) i).withMessage("event"));
+        }
+        sender.send(batch);
+        sender.stop();
+    }
+
+    private static AmazonServiceException throttling() {
+        AmazonServiceException e = new AmazonServiceException("Rate exceeded");
+        e.setErrorCode("ThrottlingException");
+        e.setStatusCode(400);
+        return e;
+    }
+
+    private static AbstractAWSLogs client(final AtomicInteger calls,
+                                          final int failures,
+                                          final AmazonServiceException failure) {
+        return new AbstractAWSLogs() {
+            @Override
+            public PutLogEventsResult putLogEvents(PutLogEventsRequest request) {
+                if (calls.incrementAndGet() <= failures) {
+                    throw failure;
+                }
+                return new PutLogEventsResult();
+            }
+        };
+    }
+}
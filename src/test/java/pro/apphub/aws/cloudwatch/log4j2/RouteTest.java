@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.AWSLogs;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks that {@link Route} selects streams by logger, level and context key, and that an appender sends every
+ * route to its own stream.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class RouteTest {
+    private static final long LATENCY = 200L;
+    private static final LocalAWSLogs SLOW = new LocalAWSLogs(LATENCY, 0.0, 1000);
+
+    public RouteTest() {
+    }
+
+    @Test
+    public void testSelect() {
+        Assert.assertNull(Route.parse(null, "a"));
+        Assert.assertNull(Route.parse("thread", null));
+
+        Route logger = Route.parse("logger", "com.acme.audit, com.acme");
+        Assert.assertEquals(0, logger.select(event("com.acme.audit", Level.INFO, null)));
+        Assert.assertEquals(0, logger.select(event("com.acme.audit.Login", Level.INFO, null)));
+        Assert.assertEquals(1, logger.select(event("com.acme.auditor", Level.INFO, null)));
+        Assert.assertEquals(1, logger.select(event("com.acme", Level.INFO, null)));
+        Assert.assertEquals(-1, logger.select(event("com.acmex", Level.INFO, null)));
+
+        Route level = Route.parse("level", "error,WARN");
+        Assert.assertEquals(0, level.select(event("test", Level.ERROR, null)));
+        Assert.assertEquals(1, level.select(event("test", Level.WARN, null)));
+        Assert.assertEquals(-1, level.select(event("test", Level.FATAL, null)));
+
+        Route context = Route.parse("context:tenant", "alpha,beta");
+        Assert.assertEquals("context:tenant", context.toString());
+        Assert.assertEquals(1, context.select(event("test", Level.INFO, "beta")));
+        Assert.assertEquals(-1, context.select(event("test", Level.INFO, "gamma")));
+        Assert.assertEquals(-1, context.select(event("test", Level.INFO, null)));
+    }
+
+    @Test
+    public void testInvalid() {
+        for (String[] r : new String[][]{{"tenant", null}, {"context:", null}, {"level", "LOUD"}, {"logger", "a:b"}}) {
+            try {
+                Route.parse(r[0], r[1]);
+                Assert.fail(r[0]);
+            } catch (IllegalArgumentException e) {
+            }
+        }
+    }
+
+    @Test
+    public void testAppender() throws Exception {
+        CloudWatchAppender appender = CloudWatchAppender.newBuilder()
+                                                        .setName("route")
+                                                        .setGroup("route/group")
+                                                        .setStreamPrefix("route")
+                                                        .setTransport("local")
+                                                        .setCapacity(1000)
+                                                        .setSpan(1)
+                                                        .setShards(2)
+                                                        .setRequestRate(0.0)
+                                                        .setRoute("level")
+                                                        .setRoutes("ERROR,WARN")
+                                                        .setLayout(PatternLayout.newBuilder()
+                                                                                .withPattern("%msg")
+                                                                                .withCharset(StandardCharsets.UTF_8)
+                                                                                .build())
+                                                        .build();
+        Assert.assertEquals(4, appender.getShards());
+        Assert.assertEquals("level", appender.getRoute());
+        appender.start();
+        long time = System.currentTimeMillis();
+        while ((appender.getStream() == null) && (System.currentTimeMillis() - time < 10000L)) {
+            Thread.sleep(10L);
+        }
+        Level[] levels = {Level.ERROR, Level.WARN, Level.INFO, Level.DEBUG};
+        for (int i = 0; i < 1000; ++i) {
+            appender.append(event("test", levels[i % levels.length], null));
+        }
+        appender.stop();
+        LocalAWSLogs logs = LocalTransport.getInstance();
+        String stream = appender.getStream();
+        Assert.assertEquals(250L, logs.getEventCount("route/group", String.format("%s/ERROR", stream)));
+        Assert.assertEquals(250L, logs.getEventCount("route/group", String.format("%s/WARN", stream)));
+        Assert.assertEquals(500L, logs.getEventCount("route/group", String.format("%s-0", stream))
+                                  + logs.getEventCount("route/group", String.format("%s-1", stream)));
+        Assert.assertEquals(0L, appender.getMetrics().getDroppedEvents());
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        CloudWatchAppender appender = CloudWatchAppender.newBuilder()
+                                                        .setName("slow")
+                                                        .setGroup("slow/group")
+                                                        .setStreamPrefix("slow")
+                                                        .setTransport(SlowTransport.class.getName())
+                                                        .setCapacity(1000)
+                                                        .setRequestRate(0.0)
+                                                        .setRoute("logger")
+                                                        .setRoutes("a,b,c,d,e,f,g,h")
+                                                        .setLayout(PatternLayout.newBuilder()
+                                                                                .withPattern("%msg")
+                                                                                .withCharset(StandardCharsets.UTF_8)
+                                                                                .build())
+                                                        .build();
+        appender.start();
+        long time = System.currentTimeMillis();
+        while ((appender.getStream() == null) && (System.currentTimeMillis() - time < 30000L)) {
+            Thread.sleep(10L);
+        }
+        String[] loggers = {"a", "b", "c", "d", "e", "f", "g", "h"};
+        for (int i = 0; i < 800; ++i) {
+            appender.append(event(loggers[i % loggers.length], Level.INFO, null));
+        }
+        time = System.currentTimeMillis();
+        appender.stop();
+        long elapsed = System.currentTimeMillis() - time;
+        for (String l : loggers) {
+            String stream = String.format("%s/%s", appender.getStream(), l);
+            Assert.assertEquals(100L, SLOW.getEventCount("slow/group", stream));
+        }
+        Assert.assertTrue(String.valueOf(elapsed), elapsed < loggers.length * LATENCY / 2L);
+    }
+
+    private static LogEvent event(String logger, Level level, String tenant) {
+        SortedArrayStringMap context = new SortedArrayStringMap();
+        if (tenant != null) {
+            context.putValue("tenant", tenant);
+        }
+        return Log4jLogEvent.newBuilder()
+                            .setLoggerName(logger)
+                            .setLevel(level)
+                            .setTimeMillis(System.currentTimeMillis())
+                            .setContextData(context)
+                            .setMessage(new SimpleMessage(level.name()))
+                            .build();
+    }
+
+    public static final class SlowTransport implements Transport {
+        public SlowTransport() {
+        }
+
+        @Override
+        public AWSLogs create(String region, String access, String secret) {
+            return SLOW;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.AbstractAWSLogs;
+import com.amazonaws.services.logs.model.InputLogEvent;
+import com.amazonaws.services.logs.model.PutLogEventsRequest;
+import com.amazonaws.services.logs.model.PutLogEventsResult;
+import com.amazonaws.services.logs.model.ServiceUnavailableException;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checks that {@link Spill} keeps events across reopening, that {@link Sender} replays them once sending
+ * recovers, that a spill locks its directory, and that an appender keeps the spill of every stream under its own
+ * name, group and route.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class SpillTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    public SpillTest() {
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        File dir = folder.newFolder();
+        Spill spill = new Spill(dir, 4096, 65536);
+        spill.open();
+        int size = 0;
+        for (int i = 0; i < 1000; ++i) {
+            byte[] message = String.format("event %d", i).getBytes(StandardCharsets.UTF_8);
+            Assert.assertTrue(spill.write(i, message));
+            size += message.length + Event.OVERHEAD;
+        }
+        ArrayList<InputLogEvent> batch = new ArrayList<>();
+        Assert.assertEquals(size, spill.read(batch));
+        Assert.assertEquals(1000, batch.size());
+        batch.clear();
+        spill.read(batch);
+        Assert.assertEquals(1000, batch.size());
+        spill.close();
+
+        spill = new Spill(dir, 4096, 65536);
+        spill.open();
+        Assert.assertFalse(spill.isEmpty());
+        batch.clear();
+        spill.read(batch);
+        Assert.assertEquals(1000, batch.size());
+        for (int i = 0; i < batch.size(); ++i) {
+            Assert.assertEquals(i, batch.get(i).getTimestamp().longValue());
+            Assert.assertEquals(String.format("event %d", i), batch.get(i).getMessage());
+        }
+        spill.commit();
+        Assert.assertTrue(spill.isEmpty());
+        Assert.assertArrayEquals(new String[]{Spill.LOCK}, dir.list());
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        Spill spill = new Spill(folder.newFolder(), 4096, 8192);
+        spill.open();
+        byte[] message = new byte[1000];
+        int c = 0;
+        while (spill.write(c, message)) {
+            ++c;
+        }
+        Assert.assertEquals(8, c);
+        Assert.assertFalse(spill.write(c, new byte[4096]));
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        final AtomicBoolean available = new AtomicBoolean(false);
+        final List<InputLogEvent> events = new ArrayList<>();
+        AbstractAWSLogs client = new AbstractAWSLogs() {
+            @Override
+            public PutLogEventsResult putLogEvents(PutLogEventsRequest request) {
+                if (available.get()) {
+                    events.addAll(request.getLogEvents());
+                    return new PutLogEventsResult();
+                } else {
+                    throw new ServiceUnavailableException("unavailable");
+                }
+            }
+        };
+        Metrics metrics = new Metrics();
+        Spill spill = new Spill(folder.newFolder(), 65536, 1048576);
+        spill.open();
+        Sender sender = new Sender("test", client, "group", "stream", null, 4, metrics, spill, new Retry(0L), null);
+        sender.start();
+        for (int i = 0; i < 10; ++i) {
+            Batch batch = sender.acquire();
+            for (int j = 0; j < 100; ++j) {
+                batch.add(new InputLogEvent().withTimestamp((long) (i * 100 + j)).withMessage("event"));
+            }
+            sender.send(batch);
+        }
+        long time = System.currentTimeMillis();
+        while (spill.isEmpty() && (System.currentTimeMillis() - time < 10000L)) {
+            Thread.sleep(10L);
+        }
+        available.set(true);
+        time = System.currentTimeMillis();
+        while (!spill.isEmpty() && (System.currentTimeMillis() - time < 10000L)) {
+            Thread.sleep(10L);
+        }
+        sender.stop();
+        Assert.assertEquals(0L, metrics.getDroppedEvents());
+        Assert.assertEquals(1000, events.size());
+        for (int i = 0; i < events.size(); ++i) {
+            Assert.assertEquals(i, events.get(i).getTimestamp().longValue());
+        }
+    }
+
+    @Test
+    public void testLocked() throws Exception {
+        File dir = folder.newFolder();
+        Spill spill = new Spill(dir, 4096, 65536);
+        spill.open();
+        Spill other = new Spill(dir, 4096, 65536);
+        try {
+            other.open();
+            Assert.fail();
+        } catch (OverlappingFileLockException e) {
+        }
+        Assert.assertFalse(other.isOpen());
+        Assert.assertFalse(other.write(0L, new byte[10]));
+        spill.close();
+        other.open();
+        Assert.assertTrue(other.write(0L, new byte[10]));
+        other.close();
+    }
+
+    @Test
+    public void testDirectories() throws Exception {
+        File dir = folder.newFolder();
+        CloudWatchAppender appender = appender("spill", "spill/group", dir, 2, "beta,a/b");
+        appender.start();
+        appender.stop();
+        Assert.assertArrayEquals(new String[]{"spill"}, dir.list());
+        String[] names = new File(dir, "spill/spill%2Fgroup").list();
+        Arrays.sort(names);
+        Assert.assertArrayEquals(new String[]{"route-a%2Fb", "route-beta", "thread-0", "thread-1"}, names);
+    }
+
+    @Test
+    public void testShared() throws Exception {
+        File dir = folder.newFolder();
+        CloudWatchAppender app = appender("app", "app/group", dir, 1, null);
+        CloudWatchAppender audit = appender("audit", "audit/group", dir, 1, null);
+        CloudWatchAppender copy = appender("app", "app/group", dir, 1, null);
+        app.start();
+        audit.start();
+        try {
+            Assert.assertTrue(new File(dir, "app/app%2Fgroup/thread-0/" + Spill.LOCK).isFile());
+            Assert.assertTrue(new File(dir, "audit/audit%2Fgroup/thread-0/" + Spill.LOCK).isFile());
+            copy.start();
+            copy.stop();
+            Spill spill = new Spill(new File(dir, "app/app%2Fgroup/thread-0"), 4096, 65536);
+            try {
+                spill.open();
+                Assert.fail();
+            } catch (OverlappingFileLockException e) {
+            }
+        } finally {
+            audit.stop();
+            app.stop();
+        }
+    }
+
+    private static CloudWatchAppender appender(String name, String group, File dir, int shards, String routes) {
+        return CloudWatchAppender.newBuilder()
+                                 .setName(name)
+                                 .setGroup(group)
+                                 .setTransport("local")
+                                 .setShards(shards)
+                                 .setRoute((routes != null) ? "context:tenant" : null)
+                                 .setRoutes(routes)
+                                 .setSpillDirectory(dir.getPath())
+                                 .setRequestRate(0.0)
+                                 .setLayout(PatternLayout.newBuilder()
+                                                         .withPattern("%msg")
+                                                         .withCharset(StandardCharsets.UTF_8)
+                                                         .build())
+                                 .build();
+    }
+}
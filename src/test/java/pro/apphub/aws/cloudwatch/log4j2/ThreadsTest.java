@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2017 Dmitry Kotlyarov.
+ * All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pro.apphub.aws.cloudwatch.log4j2;
+
+import com.amazonaws.services.logs.model.CreateLogGroupRequest;
+import com.amazonaws.services.logs.model.CreateLogStreamRequest;
+import com.amazonaws.services.logs.model.InputLogEvent;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks that {@link Threads} creates named platform threads by default, and virtual threads when enabled on a JVM
+ * that supports them or platform ones otherwise, and that senders deliver on either.
+ *
+ * @author Dmitry Kotlyarov
+ * @since 2.6
+ */
+public class ThreadsTest {
+    public ThreadsTest() {
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(Threads.PROPERTY);
+    }
+
+    @Test
+    public void testPlatform() throws Exception {
+        Assert.assertFalse(Threads.isVirtual());
+        Thread t = run("aws-cloudwatch-log4j2-test");
+        Assert.assertFalse(t.isDaemon());
+        Assert.assertFalse(isVirtual(t));
+    }
+
+    @Test
+    public void testVirtual() throws Exception {
+        System.setProperty(Threads.PROPERTY, "true");
+        Assert.assertEquals(Threads.isVirtualAvailable(), Threads.isVirtual());
+        Thread t = run("aws-cloudwatch-log4j2-test");
+        Assert.assertEquals(Threads.isVirtualAvailable(), isVirtual(t));
+        send();
+    }
+
+    private static Thread run(String name) throws InterruptedException {
+        final AtomicReference<Thread> current = new AtomicReference<>();
+        Thread t = Threads.create(name, false, new Runnable() {
+            @Override
+            public void run() {
+                current.set(Thread.currentThread());
+            }
+        });
+        Assert.assertEquals(name, t.getName());
+        t.start();
+        t.join();
+        Assert.assertSame(t, current.get());
+        return t;
+    }
+
+    private static boolean isVirtual(Thread thread) throws Exception {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static void send() {
+        LocalAWSLogs logs = new LocalAWSLogs(10L, 0.0, 1000);
+        logs.createLogGroup(new CreateLogGroupRequest("group"));
+        Sender[] senders = new Sender[64];
+        for (int i = 0; i < senders.length; ++i) {
+            String stream = String.format("stream-%d", i);
+            logs.createLogStream(new CreateLogStreamRequest("group", stream));
+            senders[i] = new Sender(stream, logs, "group", stream, null, 2, new Metrics(), null, new Retry(1000L),
+                                    null);
+            senders[i].start();
+        }
+        long time = System.currentTimeMillis();
+        for (int n = 0; n < 10; ++n) {
+            for (Sender s : senders) {
+                Batch batch = s.acquire();
+                batch.add(new InputLogEvent().withTimestamp(time + n).withMessage(String.format("event %d", n)));
+                s.send(batch);
+            }
+        }
+        for (Sender s : senders) {
+            s.stop();
+        }
+        for (int i = 0; i < senders.length; ++i) {
+            Assert.assertEquals(10L, logs.getEventCount("group", String.format("stream-%d", i)));
+        }
+    }
+}